@@ -26,8 +26,11 @@ package com.joechamm.eigenfluids;
 
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
+import android.view.MotionEvent;
+import android.view.View;
 import android.view.WindowInsets;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
 public class EigenFluidActivity extends AppCompatActivity {
@@ -37,8 +40,94 @@ public class EigenFluidActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         getWindow().getInsetsController().hide(WindowInsets.Type.statusBars());
-        GLSurfaceView view = new GLSurfaceView(this);
-        view.setRenderer(new ParticleRenderer(32, 16, true));
-        setContentView(view);
+        mView = new GLSurfaceView(this);
+
+        // The solver is sized for the best quality level. On a cold start the governor starts at the
+        // best rung no richer than the old 32 grid, 16 modes and 1000 particles; the ladder cuts by
+        // quarters, so that is grid 32, 15 modes and 948 particles. A restored solver keeps the level
+        // it was saved at. The governor moves up or down from there to hold the frame budget.
+        byte[] snapshot = savedInstanceState != null ? savedInstanceState.getByteArray(KEY_SOLVER_SNAPSHOT) : null;
+        EigenFluidSolver solver = snapshot != null
+                ? SolverSnapshot.create(snapshot)
+                : new EigenFluidSolver(MAX_GRID_RESOLUTION, MAX_MODES, MAX_PARTICLES);
+        solver.enableParticleColors(ParticleColorMap.heat(PARTICLE_MAX_SPEED));
+        mRenderer = new ParticleRenderer(solver, true);
+
+        QualityGovernor governor = new QualityGovernor(solver, TARGET_FRAME_NANOS,
+                MIN_MODES, MIN_PARTICLES, GRID_LEVELS, true);
+        if (snapshot != null) {
+            governor.adoptLevel();
+        } else {
+            governor.setLevel(governor.findLevel(32, 16, 1000));
+        }
+        mRenderer.setQualityGovernor(governor);
+
+        mView.setRenderer(mRenderer);
+        mView.setOnTouchListener(this::onTouch);
+        setContentView(mView);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mView.onPause();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mView.onResume();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // The registry retains the last released basis, so a recreated activity reuses it
+        mRenderer.release();
+    }
+
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        // The GL thread is paused by now, so the solver state is stable
+        outState.putByteArray(KEY_SOLVER_SNAPSHOT, SolverSnapshot.capture(mRenderer.getSolver()));
     }
+
+    private boolean onTouch(View v, MotionEvent event) {
+        // Forward touch samples to the simulation thread in simulation coordinates. The projection
+        // maps [0, pi] onto the view, and y grows upward.
+        TouchInputQueue queue = mRenderer.getInputQueue();
+        float sx = (float) Math.PI / v.getWidth();
+        float sy = (float) Math.PI / v.getHeight();
+
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                queue.offer(event.getX() * sx, (v.getHeight() - event.getY()) * sy, true);
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                for (int h = 0; h < event.getHistorySize(); h++) {
+                    queue.offer(event.getHistoricalX(h) * sx, (v.getHeight() - event.getHistoricalY(h)) * sy, false);
+                }
+                queue.offer(event.getX() * sx, (v.getHeight() - event.getY()) * sy, false);
+                return true;
+            case MotionEvent.ACTION_UP:
+                v.performClick();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static final String KEY_SOLVER_SNAPSHOT = "solver_snapshot";
+    private static final long TARGET_FRAME_NANOS = 16666667L;
+    private static final int[] GRID_LEVELS = {16, 24, 32};
+    private static final int MAX_GRID_RESOLUTION = 32;
+    private static final int MAX_MODES = 64;
+    private static final int MAX_PARTICLES = 4000;
+    private static final int MIN_MODES = 9;
+    private static final int MIN_PARTICLES = 250;
+    private static final double PARTICLE_MAX_SPEED = 1.0;
+
+    private GLSurfaceView mView;
+    private ParticleRenderer mRenderer;
 }
\ No newline at end of file
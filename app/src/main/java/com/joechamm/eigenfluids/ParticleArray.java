@@ -30,6 +30,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
 import java.nio.FloatBuffer;
+import java.util.Random;
 
 import javax.microedition.khronos.opengles.GL10;
 import javax.microedition.khronos.opengles.GL11;
@@ -37,62 +38,57 @@ import javax.microedition.khronos.opengles.GL11;
 public class ParticleArray {
 
     public ParticleArray(int numParticles, boolean randomLocations) {
+        this(numParticles, randomLocations, new Random().nextLong());
+    }
+
+    public ParticleArray(int numParticles, boolean randomLocations, long seed) {
+        this(EigenFluidSolver.initialPositions(numParticles, randomLocations, seed), numParticles, seed);
+    }
+
+    public ParticleArray(float[] particlesXY, int numParticles, long seed) {
+        this(particlesXY, numParticles, seed, null);
+    }
+
+    public ParticleArray(float[] particlesXY, int numParticles, long seed, ByteBuffer colors) {
+        // Draws the given positions; the array is shared with the solver that advects it. colors, when
+        // given, is a native-order RGBA8 buffer per particle that the solver keeps up to date; otherwise
+        // every particle is drawn in one flat color.
         int idx = 0;
 
         mNumParticles = numParticles;
+        mDrawCount = numParticles;
+        mSeed = seed;
 
-        mParticlesXY = new float[mNumParticles * 2];
+        mParticlesXY = particlesXY;
         mBufferIndices = new short[mNumParticles];
 
-        if(randomLocations) {
-            for(int i = 0; i < mNumParticles; i++) {
-                float rx = (float)Math.random();
-                float ry = (float)Math.random();
-                mParticlesXY[i * 2] = rx;
-                mParticlesXY[i * 2 + 1] = ry;
-            }
-        } else {
-            int sqrt = (int) Math.sqrt(mNumParticles);
-            float x = 0.0f;
-            float y = 0.0f;
-            float dx = (float)1.0 / sqrt;
-            float dy = (float)1.0 / sqrt;
-            for(int i = 0; i < mNumParticles; i++) {
-                mParticlesXY[i * 2] = x;
-                mParticlesXY[i * 2 + 1] = y;
-
-                x += dx;
-                idx++;
-                if (idx > sqrt) {
-                    idx = 0;
-                    x = 0.0f;
-                    y += dy;
-                }
-            }
-        }
-
-        idx = 0;
-
         for (int i = 0; i < mNumParticles; i++) {
             mBufferIndices[idx] = (short) i;
             idx++;
         }
 
-        byte maxColor = (byte) 255;
-        byte[] colors = {maxColor, 0, 0, maxColor};
+        if (colors != null) {
+            mColorBuffer = colors;
+        } else {
+            byte maxColor = (byte) 255;
+            byte[] color = {maxColor, 0, 0, maxColor};
+
+            ByteBuffer cbb = ByteBuffer.allocateDirect(color.length * mNumParticles);
+            cbb.order(ByteOrder.nativeOrder());
+            mColorBuffer = cbb;
+            for (int i = 0; i < mNumParticles; i++) {
+                mColorBuffer.put(color);
+            }
+            mColorBuffer.position(0);
+        }
 
+        // Vertex and index buffers are allocated once; update() only refreshes the positions
         ByteBuffer vbb = ByteBuffer.allocateDirect(mParticlesXY.length * 4);
         vbb.order(ByteOrder.nativeOrder());
         mFVertexBuffer = vbb.asFloatBuffer();
         mFVertexBuffer.put(mParticlesXY);
         mFVertexBuffer.position(0);
 
-        ByteBuffer cbb = ByteBuffer.allocateDirect(colors.length);
-        cbb.order(ByteOrder.nativeOrder());
-        mColorBuffer = cbb;
-        mColorBuffer.put(colors);
-        mColorBuffer.position(0);
-
         ByteBuffer ibb = ByteBuffer.allocateDirect(mBufferIndices.length * 2);
         ibb.order(ByteOrder.nativeOrder());
         mIndexBuffer = ibb.asShortBuffer();
@@ -103,29 +99,28 @@ public class ParticleArray {
     public void draw(@NonNull GL10 gl) {
         gl.glVertexPointer(2, GL11.GL_FLOAT, 0, mFVertexBuffer);
         gl.glColorPointer(4, GL11.GL_UNSIGNED_BYTE, 0, mColorBuffer);
-        gl.glDrawElements(GL11.GL_POINTS, mNumParticles, GL11.GL_UNSIGNED_SHORT, mIndexBuffer);
+        gl.glDrawElements(GL11.GL_POINTS, mDrawCount, GL11.GL_UNSIGNED_SHORT, mIndexBuffer);
+    }
+
+    public void setDrawCount(int count) {
+        // Draw (and upload) only the first count particles, e.g. those the solver is still advecting
+        mDrawCount = Math.max(0, Math.min(count, mNumParticles));
     }
 
     public void update() {
-        ByteBuffer vbb = ByteBuffer.allocateDirect(mParticlesXY.length * 4);
-        vbb.order(ByteOrder.nativeOrder());
-        mFVertexBuffer = vbb.asFloatBuffer();
-        mFVertexBuffer.put(mParticlesXY);
         mFVertexBuffer.position(0);
-
-        ByteBuffer ibb = ByteBuffer.allocateDirect(mBufferIndices.length * 2);
-        ibb.order(ByteOrder.nativeOrder());
-        mIndexBuffer = ibb.asShortBuffer();
-        mIndexBuffer.put(mBufferIndices);
-        mIndexBuffer.position(0);
+        mFVertexBuffer.put(mParticlesXY, 0, mDrawCount * 2);
+        mFVertexBuffer.position(0);
     }
 
     public int[] mParticleIndex;
     public short[] mBufferIndices;
     public float[] mParticlesXY;
     public int mNumParticles;
+    public int mDrawCount;
+    public final long mSeed;
 
-    private FloatBuffer mFVertexBuffer;
-    private ShortBuffer mIndexBuffer;
+    private final FloatBuffer mFVertexBuffer;
+    private final ShortBuffer mIndexBuffer;
     private final ByteBuffer mColorBuffer;
 }
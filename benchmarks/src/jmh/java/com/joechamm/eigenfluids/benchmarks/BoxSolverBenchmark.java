@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.joechamm.eigenfluids.benchmarks;
+
+import com.joechamm.eigenfluids.BoxEigenFluidSolver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BoxSolverBenchmark {
+
+    // Per-frame stages of the 3-D BoxEigenFluidSolver; maxWavenumber 4 and 5 are 128 and 250 modes
+
+    @Param({"4", "5"})
+    public int maxWavenumber;
+
+    @Param({"16", "32"})
+    public int grid;
+
+    @Setup
+    public void setup() {
+        mSolver = new BoxEigenFluidSolver(grid, maxWavenumber, 10000, 1L);
+
+        Random random = new Random(1);
+        for (int k = 0; k < mSolver.mN; k++) {
+            mSolver.mCoefficients[k] = 0.1 * random.nextGaussian();
+        }
+        mSolver.expandBasis();
+    }
+
+    @Benchmark
+    public double[] step() {
+        // Includes expandBasis()
+        mSolver.step();
+        return mSolver.mCoefficients;
+    }
+
+    @Benchmark
+    public double[][] expandBasis() {
+        mSolver.expandBasis();
+        return mSolver.mVelocity;
+    }
+
+    @Benchmark
+    public float[] advectParticles() {
+        mSolver.advectParticles();
+        return mSolver.mParticlesXYZ;
+    }
+
+    private BoxEigenFluidSolver mSolver;
+}
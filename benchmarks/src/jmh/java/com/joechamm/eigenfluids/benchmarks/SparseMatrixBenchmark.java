@@ -0,0 +1,121 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids.benchmarks;
+
+import com.joechamm.eigenfluids.BasisBundle;
+import com.joechamm.eigenfluids.BasisRegistry;
+import com.joechamm.eigenfluids.MatrixFreeAdvection;
+import com.joechamm.eigenfluids.PackedStructureCoefficients;
+import com.joechamm.eigenfluids.SparseMatrix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SparseMatrixBenchmark {
+
+    // The structure-coefficient products that dominate EigenFluidSolver.step()
+
+    @Param({"16", "64", "256"})
+    public int modes;
+
+    @Setup
+    public void setup() {
+        mBasis = BasisRegistry.acquire(8, modes);
+        mCk = mBasis.buildStructureCoefficients();
+        mPackedCk = mBasis.mPackedCk;
+        mMatrixFree = mBasis.mMatrixFree;
+        mResult = new double[modes];
+        mScaled = new double[modes];
+
+        Random random = new Random(1);
+        mQ = new double[modes];
+        for (int k = 0; k < modes; k++) {
+            mQ[k] = random.nextGaussian();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BasisRegistry.release(mBasis);
+    }
+
+    @Benchmark
+    public double[] mult() {
+        // A single product, as done once per mode per RK4 stage
+        return mCk[modes / 2].mult(mQ);
+    }
+
+    @Benchmark
+    public double quadraticForms() {
+        // One full RK4 stage: q . (C_k q) for every mode
+        double sum = 0.0;
+        for (int k = 0; k < modes; k++) {
+            double[] r = mCk[k].mult(mQ);
+            for (int i = 0; i < modes; i++) {
+                sum += mQ[i] * r[i];
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double packedQuadraticForms() {
+        // The same stage from the symmetry-compressed coefficients
+        double sum = 0.0;
+        mPackedCk.scale(mQ, mScaled);
+        for (int k = 0; k < modes; k++) {
+            sum += mPackedCk.quadraticForm(k, mQ, mScaled);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double[] matrixFreeAdvection() {
+        // The same stage evaluated from the wavenumbers, with nothing stored
+        mMatrixFree.evaluate(mQ, mResult);
+        return mResult;
+    }
+
+    private BasisBundle mBasis;
+    private SparseMatrix[] mCk;
+    private PackedStructureCoefficients mPackedCk;
+    private double[] mQ;
+    private double[] mScaled;
+    private MatrixFreeAdvection mMatrixFree;
+    private double[] mResult;
+}
@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.joechamm.eigenfluids;
+
+public class BandedExpansion implements WorkerPool.Task {
+
+    // Full-grid basis expansion with the loops turned around: each grid row is cleared and then
+    // accumulates every active mode while it sits in cache, so the velocity field is written once
+    // per frame instead of once per mode. Rows are handed out in bands across a WorkerPool. Each
+    // node still sums the modes in active-list order, so the result matches the mode-outer loop.
+
+    public static final int BANDS_PER_WORKER = 4;
+
+    public void expand(double[] coefficients, int[] activeModes, int activeCount,
+                       double[][][][] basis, double[][][] field, WorkerPool pool) {
+        mCoefficients = coefficients;
+        mActiveModes = activeModes;
+        mActiveCount = activeCount;
+        mBasis = basis;
+        mField = field;
+
+        int rows = field[0].length;
+        if (pool == null) {
+            mBands = 1;
+            mBandRows = rows;
+            this.run(0, 0);
+        } else {
+            mBands = Math.min(rows, pool.getWorkerCount() * BANDS_PER_WORKER);
+            mBandRows = (rows + mBands - 1) / mBands;
+            mBands = (rows + mBandRows - 1) / mBandRows;
+            pool.run(this, mBands);
+        }
+
+        mCoefficients = null;
+        mBasis = null;
+        mField = null;
+    }
+
+    @Override
+    public void run(int band, int worker) {
+        double[][] u = mField[0];
+        double[][] v = mField[1];
+        int i0 = band * mBandRows;
+        int i1 = Math.min(u.length, i0 + mBandRows);
+
+        for (int i = i0; i < i1; i++) {
+            double[] uRow = u[i];
+            double[] vRow = v[i];
+            int columns = uRow.length;
+
+            for (int j = 0; j < columns; j++) {
+                uRow[j] = 0.0;
+                vRow[j] = 0.0;
+            }
+
+            for (int a = 0; a < mActiveCount; a++) {
+                int k = mActiveModes[a];
+                double c = mCoefficients[k];
+                double[] bu = mBasis[k][0][i];
+                double[] bv = mBasis[k][1][i];
+
+                for (int j = 0; j < columns; j++) {
+                    uRow[j] += c * bu[j];
+                    vRow[j] += c * bv[j];
+                }
+            }
+        }
+    }
+
+    private double[] mCoefficients;
+    private int[] mActiveModes;
+    private int mActiveCount;
+    private double[][][][] mBasis;
+    private double[][][] mField;
+    private int mBands;
+    private int mBandRows;
+}
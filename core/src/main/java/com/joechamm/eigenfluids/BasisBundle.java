@@ -0,0 +1,334 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import java.util.Arrays;
+
+public class BasisBundle {
+
+    // The precomputed data of a solver: lookup tables, basis fields, eigenvalues and structure
+    // coefficients. It depends only on (gridResolution, N) and is never modified after
+    // construction, so any number of solvers may share one through BasisRegistry. When the stored
+    // coefficients would exceed STORED_DYNAMICS_BUDGET_BYTES, mPackedCk stays null and solvers use
+    // mMatrixFree. The SparseMatrix form is only built on request, by buildStructureCoefficients().
+
+    public BasisBundle(int gridResolution, int N) {
+        mX = gridResolution;
+        mY = gridResolution;
+        mN = N;
+
+        // Assume that mN is a perfect square, and use all basis fields with eigenvalues (k1,k2) up to (sqrt(mN), sqrt(mN))
+        mNSqrt = (int) Math.floor(Math.sqrt(mN));
+        mBasisReverseLookupTable = this.fillReverseLookupTable();
+        mBasisLookupTable = this.fillLookupTable();
+        mVelocityBasis = this.precomputeBasisFields();
+
+        mEigenvalues = new double[mN];
+        mInverseEigenvalues = new double[mN];
+        mInverseEigenvaluesSqrt = new double[mN];
+        this.precomputeEigenvalues();
+
+        mMatrixFree = new MatrixFreeAdvection(mBasisLookupTable, mBasisReverseLookupTable, mNSqrt, mEigenvalues);
+        mPackedCk = this.precomputeDynamics();
+        mModeOrder = this.sortModes();
+    }
+
+    public BasisBundle(int gridResolution, BasisBundle dynamics) {
+        // Everything except the basis fields depends only on N, so share it with another grid resolution
+        mX = gridResolution;
+        mY = gridResolution;
+        mN = dynamics.mN;
+
+        mNSqrt = dynamics.mNSqrt;
+        mBasisLookupTable = dynamics.mBasisLookupTable;
+        mBasisReverseLookupTable = dynamics.mBasisReverseLookupTable;
+        mPackedCk = dynamics.mPackedCk;
+        mMatrixFree = dynamics.mMatrixFree;
+        mEigenvalues = dynamics.mEigenvalues;
+        mInverseEigenvalues = dynamics.mInverseEigenvalues;
+        mInverseEigenvaluesSqrt = dynamics.mInverseEigenvaluesSqrt;
+        mModeOrder = dynamics.mModeOrder;
+
+        mVelocityBasis = this.precomputeBasisFields();
+    }
+
+    public boolean matches(int gridResolution, int N) {
+        return mX == gridResolution && mY == gridResolution && mN == N;
+    }
+
+    public int basisLookup(int index, int component) {
+        return mBasisLookupTable[index][component];
+    }
+
+    public int basisReverseLookup(int k1, int k2) {
+        if (k1 > mNSqrt || k1 < 1 || k2 > mNSqrt || k2 < 1) {
+            // these fields do not exist
+            return -1;
+        }
+
+        return mBasisReverseLookupTable[k1][k2];
+    }
+
+    private int[][] fillReverseLookupTable() {
+        int[][] reverseLookup = new int[mNSqrt + 1][mNSqrt + 1];
+
+        // Initialize lookup table to -1, meaning this (k1,k2) basis field does not exist
+        for (int k1 = 0; k1 < mNSqrt + 1; k1++) {
+            for (int k2 = 0; k2 < mNSqrt + 1; k2++) {
+                reverseLookup[k1][k2] = -1;
+            }
+        }
+
+        int idx = 0;
+        for (int k1 = 0; k1 < mNSqrt + 1; k1++) {
+            for (int k2 = 0; k2 < mNSqrt + 1; k2++) {
+                if (k1 > mNSqrt || k1 < 1 || k2 > mNSqrt || k2 < 1) {
+                    // these fields do not exist
+                    continue;
+                }
+
+                reverseLookup[k1][k2] = idx++;
+            }
+        }
+
+        return reverseLookup;
+    }
+
+    private int[][] fillLookupTable() {
+        // The inverse of mBasisReverseLookupTable
+        int[][] lookup = new int[mN][2];
+
+        for (int k1 = 1; k1 < mNSqrt + 1; k1++) {
+            for (int k2 = 1; k2 < mNSqrt + 1; k2++) {
+                int idx = mBasisReverseLookupTable[k1][k2];
+
+                lookup[idx][0] = k1;
+                lookup[idx][1] = k2;
+            }
+        }
+
+        return lookup;
+    }
+
+    private int[] sortModes() {
+        // Mode indices from smallest to largest eigenvalue, so a truncated basis keeps the largest scales
+        Integer[] order = new Integer[mN];
+        for (int i = 0; i < mN; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(mEigenvalues[a], mEigenvalues[b]));
+
+        int[] modeOrder = new int[mN];
+        for (int i = 0; i < mN; i++) {
+            modeOrder[i] = order[i];
+        }
+
+        return modeOrder;
+    }
+
+    private double[][][][] precomputeBasisFields() {
+        double[][][][] velocityBasis = new double[mN][][][];
+
+        for (int i = 0; i < mN; i++) {
+            int k1 = this.basisLookup(i, 0);
+            int k2 = this.basisLookup(i, 1);
+
+            velocityBasis[i] = this.basisField2DRect(k1, k2, 1.0);
+        }
+
+        return velocityBasis;
+    }
+
+    private void precomputeEigenvalues() {
+        // Calculate the eigenvalues of each basis field.
+        for (int i = 0; i < mN; i++) {
+            int k1 = this.basisLookup(i, 0);
+            int k2 = this.basisLookup(i, 1);
+            mEigenvalues[i] = k1 * k1 + k2 * k2;
+            mInverseEigenvalues[i] = 1.0 / (k1 * k1 + k2 * k2);
+            mInverseEigenvaluesSqrt[i] = 1.0 / Math.sqrt(k1 * k1 + k2 * k2);
+        }
+    }
+
+    private PackedStructureCoefficients precomputeDynamics() {
+        // Each coupling is stored once as a packed pair, an int column and a double value.
+        // Past the budget only the matrix-free evaluator is available.
+        if (12L * mMatrixFree.getTriadCount() > STORED_DYNAMICS_BUDGET_BYTES) {
+            return null;
+        }
+
+        return new PackedStructureCoefficients(mMatrixFree, mEigenvalues);
+    }
+
+    public SparseMatrix[] buildStructureCoefficients() {
+        // Precomputes structure coefficients for 2-D rectangle basis functions, in the original
+        // SparseMatrix form. Solvers use mPackedCk or mMatrixFree; this is kept as the reference
+        // they are checked against, and is not retained by the bundle.
+        SparseMatrix[] ck = new SparseMatrix[mN];
+
+        // Allocate sparse matrices
+        for (int i = 0; i < mN; i++) {
+            ck[i] = new SparseMatrix(mN, mN);
+        }
+
+        for (int d1 = 0; d1 < mN; d1++) {
+            int a1 = this.basisLookup(d1, 0);
+            int a2 = this.basisLookup(d1, 1);
+
+            double lambdaA = -1.0 * (a1 * a1 + a2 * a2);
+
+            for (int d2 = 0; d2 < mN; d2++) {
+                int b1 = this.basisLookup(d2, 0);
+                int b2 = this.basisLookup(d2, 1);
+
+                double lambdaB = -1.0 * (b1 * b1 + b2 * b2);
+                double invLambdaB = -1.0 / (b1 * b1 + b2 * b2);
+
+                int k1 = this.basisReverseLookup(a1, a2);
+                int k2 = this.basisReverseLookup(b1, b2);
+
+                int[][] antipairs = new int[4][2];
+                antipairs[0][0] = a1 - b1;
+                antipairs[0][1] = a2 - b2;
+                antipairs[1][0] = a1 - b1;
+                antipairs[1][1] = a2 + b2;
+                antipairs[2][0] = a1 + b1;
+                antipairs[2][1] = a2 - b2;
+                antipairs[3][0] = a1 + b1;
+                antipairs[3][1] = a2 + b2;
+
+                for (int c = 0; c < 4; c++) {
+                    int i = antipairs[c][0];
+                    int j = antipairs[c][1];
+
+                    int idx = this.basisReverseLookup(i, j);
+
+                    if (idx != -1) {
+                        double coefficient = invLambdaB * this.coefficientDensity(a1, a2, b1, b2, c, 0);
+                        ck[idx].set(k1, k2, -coefficient);
+                        ck[idx].set(k2, k1, coefficient * lambdaB / lambdaA);
+                    }
+                }
+            }
+        }
+
+        return ck;
+    }
+
+    public double coefficientDensity(int a1, int b1, int a2, int b2, int c, int tt) {
+        if (tt == 0) {
+            // SS x SS
+            if (c == 0)
+                return -0.25 * (a1 * b2 - a2 * b1); // --
+            if (c == 1)
+                return 0.25 * (a1 * b2 + a2 * b1); // -+
+            if (c == 2)
+                return -0.25 * (a1 * b2 + a2 * b1); // +-
+            if (c == 3)
+                return 0.25 * (a1 * b2 - a2 * b1); // ++
+        } else if (tt == 1) {
+            // SC x SS
+            if (c == 0)
+                return -0.25 * (a1 * b2 - a2 * b1); // --
+            if (c == 1)
+                return -0.25 * (a1 * b2 + a2 * b1); // -+
+            if (c == 2)
+                return 0.25 * (a1 * b2 + a2 * b1); // +-
+            if (c == 3)
+                return 0.25 * (a1 * b2 - a2 * b1); // ++
+        } else if (tt == 2) {
+            // CS x SS
+            if (c == 0)
+                return -0.25 * (a1 * b2 - a2 * b1); // --
+            if (c == 1)
+                return -0.25 * (a1 * b2 + a2 * b1); // -+
+            if (c == 2)
+                return 0.25 * (a1 * b2 + a2 * b1); // +-
+            if (c == 3)
+                return 0.25 * (a1 * b2 - a2 * b1); // ++
+        } else if (tt == 3) {
+            // CS x SS
+            if (c == 0)
+                return -0.25 * (a1 * b2 - a2 * b1); // --
+            if (c == 1)
+                return -0.25 * (a1 * b2 + a2 * b1); // -+
+            if (c == 2)
+                return 0.25 * (a1 * b2 + a2 * b1); // +-
+            if (c == 3)
+                return 0.25 * (a1 * b2 - a2 * b1); // ++
+        }
+
+        return 0;
+    }
+
+    public double[][][] basisField2DRect(int n, int m, double amp) {
+        // Calculate Laplacian eigenfunction for eigenvalue (k1,k2) on 2D Rectangle
+
+        int a = n;
+        int b = m;
+
+        double xFactor = 1.0;
+        double yFactor = 1.0;
+
+        if (n != 0)
+            xFactor = -1.0 / (a * a + b * b);
+
+        if (m != 0)
+            yFactor = -1.0 / (a * a + b * b);
+
+        double[][][] velField = new double[2][mX + 1][mY + 1];
+
+        double dx = Math.PI / mX;
+        double dy = Math.PI / mY;
+
+        for (int i = 0; i < mX + 1; i++) {
+            for (int j = 0; j < mY + 1; j++) {
+                double x = (double) i * dx;
+                double y = (double) j * dy;
+
+                velField[0][i][j] = -b * amp * xFactor * Math.sin(a * x) * Math.cos(b * (y + 0.5 * dy));
+                velField[1][i][j] = a * amp * yFactor * Math.cos(a * (x + 0.5 * dx)) * Math.sin(b * y);
+            }
+        }
+
+        return velField;
+    }
+
+    public static final long STORED_DYNAMICS_BUDGET_BYTES = 64L << 20;
+
+    public final int mX;
+    public final int mY;
+    public final int mN;
+    public final int mNSqrt;
+    public final int[][] mBasisLookupTable;
+    public final int[][] mBasisReverseLookupTable;
+    public final double[][][][] mVelocityBasis;
+    public final PackedStructureCoefficients mPackedCk;
+    public final MatrixFreeAdvection mMatrixFree;
+    public final double[] mEigenvalues;
+    public final double[] mInverseEigenvalues;
+    public final double[] mInverseEigenvaluesSqrt;
+    public final int[] mModeOrder;
+}
@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import java.util.HashMap;
+
+public class BasisRegistry {
+
+    // Process-wide, reference-counted cache of BasisBundles keyed by (gridResolution, N).
+    // acquire() builds a bundle at most once per key, outside the registry lock, so solvers
+    // with other configurations are not held up by a long precompute. The most recently
+    // released bundle is retained, so a solver that is torn down and recreated with the same
+    // configuration (for example across an activity configuration change) skips the precompute.
+    // A bundle for a new grid resolution borrows the structure coefficients of any live bundle
+    // with the same N and only computes its basis fields.
+
+    public static BasisBundle acquire(int gridResolution, int N) {
+        Entry entry;
+        BasisBundle dynamics = null;
+        long key = key(gridResolution, N);
+
+        synchronized (sEntries) {
+            entry = sEntries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                if (sRetained != null && sRetained.matches(gridResolution, N)) {
+                    entry.mBundle = sRetained;
+                    sRetained = null;
+                } else {
+                    dynamics = findDynamics(N);
+                }
+                sEntries.put(key, entry);
+            }
+            entry.mReferences++;
+        }
+
+        synchronized (entry) {
+            if (entry.mBundle == null) {
+                entry.mBundle = dynamics != null
+                        ? new BasisBundle(gridResolution, dynamics)
+                        : new BasisBundle(gridResolution, N);
+            }
+            return entry.mBundle;
+        }
+    }
+
+    public static void release(BasisBundle bundle) {
+        long key = key(bundle.mX, bundle.mN);
+
+        synchronized (sEntries) {
+            Entry entry = sEntries.get(key);
+            if (entry == null || entry.mBundle != bundle) {
+                throw new IllegalStateException("Bundle was not acquired from the registry");
+            }
+
+            if (--entry.mReferences == 0) {
+                sEntries.remove(key);
+                sRetained = bundle;
+            }
+        }
+    }
+
+    public static int getReferenceCount(int gridResolution, int N) {
+        synchronized (sEntries) {
+            Entry entry = sEntries.get(key(gridResolution, N));
+            return entry == null ? 0 : entry.mReferences;
+        }
+    }
+
+    public static void clearRetained() {
+        synchronized (sEntries) {
+            sRetained = null;
+        }
+    }
+
+    private static BasisBundle findDynamics(int N) {
+        // Caller holds the registry lock
+        for (Entry entry : sEntries.values()) {
+            BasisBundle bundle = entry.mBundle;
+            if (bundle != null && bundle.mN == N) {
+                return bundle;
+            }
+        }
+
+        if (sRetained != null && sRetained.mN == N) {
+            return sRetained;
+        }
+
+        return null;
+    }
+
+    private static long key(int gridResolution, int N) {
+        return ((long) gridResolution << 32) | (N & 0xffffffffL);
+    }
+
+    private static class Entry {
+        volatile BasisBundle mBundle;
+        int mReferences;
+    }
+
+    private static final HashMap<Long, Entry> sEntries = new HashMap<>();
+    private static BasisBundle sRetained;
+}
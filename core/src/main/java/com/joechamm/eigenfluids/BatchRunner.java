@@ -0,0 +1,188 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class BatchRunner {
+
+    // Runs an EigenFluidSolver headless for a fixed number of steps as fast as possible,
+    // optionally streaming frames to raw little-endian files:
+    //   --particles-out     float32 x, y for every particle, one frame per written step
+    //   --coefficients-out  float64 coefficients, one frame per written step
+    //   --telemetry-out     EnergyTelemetry export, sampled every --telemetry-every steps
+
+    public static void main(String[] argv) throws IOException {
+        int steps = 1000;
+        int modes = 16;
+        int grid = 32;
+        int particles = 1000;
+        int every = 1;
+        long seed = 0;
+        double dt = 0.1;
+        double viscosity = 0.0;
+        boolean cubic = false;
+        String advection = null;
+        boolean parallel = false;
+        String particlesOut = null;
+        String coefficientsOut = null;
+        String telemetryOut = null;
+        int telemetryEvery = 10;
+
+        for (int i = 0; i < argv.length; i++) {
+            switch (argv[i]) {
+                case "--steps": steps = Integer.parseInt(argv[++i]); break;
+                case "--modes": modes = Integer.parseInt(argv[++i]); break;
+                case "--grid": grid = Integer.parseInt(argv[++i]); break;
+                case "--particles": particles = Integer.parseInt(argv[++i]); break;
+                case "--every": every = Integer.parseInt(argv[++i]); break;
+                case "--seed": seed = Long.parseLong(argv[++i]); break;
+                case "--dt": dt = Double.parseDouble(argv[++i]); break;
+                case "--viscosity": viscosity = Double.parseDouble(argv[++i]); break;
+                case "--cubic": cubic = true; break;
+                case "--advection": advection = argv[++i]; break;
+                case "--parallel": parallel = true; break;
+                case "--particles-out": particlesOut = argv[++i]; break;
+                case "--coefficients-out": coefficientsOut = argv[++i]; break;
+                case "--telemetry-out": telemetryOut = argv[++i]; break;
+                case "--telemetry-every": telemetryEvery = Integer.parseInt(argv[++i]); break;
+                default:
+                    System.err.println("usage: BatchRunner [--steps S] [--modes N] [--grid R] [--particles P]"
+                            + " [--seed L] [--dt D] [--viscosity V] [--cubic] [--every K]"
+                            + " [--advection stored|matrix-free|auto] [--parallel]"
+                            + " [--particles-out FILE] [--coefficients-out FILE]"
+                            + " [--telemetry-out FILE] [--telemetry-every K]");
+                    System.exit(2);
+            }
+        }
+
+        long precomputeStart = System.nanoTime();
+        EigenFluidSolver solver = new EigenFluidSolver(grid, modes, particles, seed);
+        long precomputeEnd = System.nanoTime();
+
+        solver.mDt = dt;
+        solver.mViscosity = viscosity;
+        solver.setCubicAdvection(cubic);
+        if (telemetryOut != null) {
+            solver.enableTelemetry(telemetryEvery, steps / Math.max(1, telemetryEvery) + 1);
+        }
+        solver.setParallelAdvection(parallel);
+        solver.setParallelExpansion(parallel);
+        // By default stored coefficients are used whenever the bundle has them, which keeps runs reproducible
+        if ("auto".equals(advection)) {
+            solver.chooseAdvectionMode();
+        } else if (advection != null) {
+            solver.setMatrixFreeAdvection(advection.equals("matrix-free"));
+        }
+
+        FrameWriter particleWriter = particlesOut != null ? new FrameWriter(particlesOut, 4 * 2 * particles) : null;
+        FrameWriter coefficientWriter = coefficientsOut != null ? new FrameWriter(coefficientsOut, 8 * modes) : null;
+
+        long runStart = System.nanoTime();
+        for (int s = 0; s < steps; s++) {
+            solver.step();
+            solver.advectParticles();
+
+            if (s % every == 0) {
+                if (particleWriter != null) {
+                    particleWriter.frame().asFloatBuffer().put(solver.mParticlesXY);
+                    particleWriter.commit();
+                }
+                if (coefficientWriter != null) {
+                    coefficientWriter.frame().asDoubleBuffer().put(solver.mCoefficients);
+                    coefficientWriter.commit();
+                }
+            }
+        }
+        long runEnd = System.nanoTime();
+
+        if (particleWriter != null) {
+            particleWriter.close();
+        }
+        if (coefficientWriter != null) {
+            coefficientWriter.close();
+        }
+        if (telemetryOut != null) {
+            solver.mTelemetry.export(new File(telemetryOut));
+        }
+        solver.release();
+
+        double runSeconds = (runEnd - runStart) * 1e-9;
+        System.out.printf("precompute %.3f s, %s advection, %d steps in %.3f s (%.1f steps/s, %.1f Mparticle-steps/s)\n",
+                (precomputeEnd - precomputeStart) * 1e-9, solver.mMatrixFreeAdvection ? "matrix-free" : "stored",
+                steps, runSeconds, steps / runSeconds,
+                (double) steps * particles / runSeconds * 1e-6);
+    }
+
+    private static class FrameWriter {
+
+        // Fixed-size frames staged in a direct buffer and written to the channel in large chunks
+
+        FrameWriter(String path, int frameSize) throws IOException {
+            mFrameSize = frameSize;
+            mChannel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            mBuffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, frameSize));
+            mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        ByteBuffer frame() throws IOException {
+            // The returned view starts at the next free byte; call commit() once it is filled
+            if (mBuffer.remaining() < mFrameSize) {
+                drain();
+            }
+            return mBuffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        void commit() {
+            mBuffer.position(mBuffer.position() + mFrameSize);
+        }
+
+        void close() throws IOException {
+            drain();
+            mChannel.close();
+        }
+
+        private void drain() throws IOException {
+            mBuffer.flip();
+            while (mBuffer.hasRemaining()) {
+                mChannel.write(mBuffer);
+            }
+            mBuffer.clear();
+        }
+
+        private static final int BUFFER_SIZE = 1 << 20;
+
+        private final int mFrameSize;
+        private final FileChannel mChannel;
+        private final ByteBuffer mBuffer;
+    }
+}
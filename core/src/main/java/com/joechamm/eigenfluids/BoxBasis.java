@@ -0,0 +1,249 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.joechamm.eigenfluids;
+
+public class BoxBasis {
+
+    // Precomputed data for BoxEigenFluidSolver on the box [0, pi]^3 with free-slip walls.
+    //
+    // Every wave vector k = (k1, k2, k3), 1 <= ki <= M, carries two divergence-free eigenfields of the
+    // vector Laplacian (eigenvalue -|k|^2), one per unit polarization A perpendicular to k:
+    //   u_x = A_x sin(k1 x) cos(k2 y) cos(k3 z)
+    //   u_y = A_y cos(k1 x) sin(k2 y) cos(k3 z)
+    //   u_z = A_z cos(k1 x) cos(k2 y) sin(k3 z)
+    // with vorticity W = A x k carried by the complementary sin/cos pattern. All fields have the same
+    // norm (pi / 2)^3, so the coefficients are velocity amplitudes and the energy is sum c_k^2.
+    //
+    // The Galerkin projection of the Lamb form of Euler's equations gives dc_k/dt = sum T(k, i, j) c_i c_j
+    // with T(k, i, j) = <u_k, u_i x w_j> / (pi / 2)^3. Each term of that integrand is a product of
+    // three 1-D integrals of sin/cos triples, which vanish unless k_t = i_t + j_t or |i_t - j_t| on every
+    // axis. The triads are therefore generated directly: each unordered pair {i, j} is visited once and
+    // only its (at most 8 x 2) partner modes are evaluated, from closed-form 1-D integrals. Nothing
+    // 3-D is stored; velocity expansion uses the 1-D sin/cos tables in mSin and mCos.
+
+    // Stored pairs pack both mode indices into one int, 16 bits each, which needs 2 M^3 <= 65536
+    public static final int MAX_WAVENUMBER = 32;
+
+    public BoxBasis(int gridResolution, int maxWavenumber) {
+        if (maxWavenumber < 1 || maxWavenumber > MAX_WAVENUMBER) {
+            throw new IllegalArgumentException("maxWavenumber " + maxWavenumber + " outside [1, " + MAX_WAVENUMBER + "]");
+        }
+
+        mX = gridResolution;
+        mM = maxWavenumber;
+        mN = 2 * mM * mM * mM;
+
+        this.fillLookupTable();
+        this.precomputeTables();
+        this.precomputeDynamics();
+    }
+
+    public int modeIndex(int k1, int k2, int k3, int polarization) {
+        if (k1 < 1 || k1 > mM || k2 < 1 || k2 > mM || k3 < 1 || k3 > mM) {
+            return -1;
+        }
+        return (((k1 - 1) * mM + (k2 - 1)) * mM + (k3 - 1)) * 2 + polarization;
+    }
+
+    private void fillLookupTable() {
+        // Wave vectors in lexicographic order, two polarizations each:
+        // A0 = (k2, -k1, 0) / |.|, A1 = k x A0 / |k|
+        mWavenumbers = new int[mN][3];
+        mPolarizations = new double[mN][3];
+        mEigenvalues = new double[mN];
+
+        for (int k1 = 1; k1 <= mM; k1++) {
+            for (int k2 = 1; k2 <= mM; k2++) {
+                for (int k3 = 1; k3 <= mM; k3++) {
+                    double norm = Math.sqrt(k1 * k1 + k2 * k2 + k3 * k3);
+                    double planar = Math.sqrt(k1 * k1 + k2 * k2);
+
+                    double[] a0 = {k2 / planar, -k1 / planar, 0.0};
+                    double[] a1 = {
+                            (k2 * a0[2] - k3 * a0[1]) / norm,
+                            (k3 * a0[0] - k1 * a0[2]) / norm,
+                            (k1 * a0[1] - k2 * a0[0]) / norm};
+
+                    for (int p = 0; p < 2; p++) {
+                        int m = modeIndex(k1, k2, k3, p);
+                        mWavenumbers[m][0] = k1;
+                        mWavenumbers[m][1] = k2;
+                        mWavenumbers[m][2] = k3;
+                        mPolarizations[m] = p == 0 ? a0 : a1;
+                        mEigenvalues[m] = k1 * k1 + k2 * k2 + k3 * k3;
+                    }
+                }
+            }
+        }
+    }
+
+    private void precomputeTables() {
+        // mSin[a][i] = sin(a x_i) and mCos[a][i] = cos(a x_i) at the grid nodes x_i = i pi / X
+        mSin = new double[mM + 1][mX + 1];
+        mCos = new double[mM + 1][mX + 1];
+
+        double dx = Math.PI / mX;
+        for (int a = 0; a <= mM; a++) {
+            for (int i = 0; i <= mX; i++) {
+                mSin[a][i] = Math.sin(a * i * dx);
+                mCos[a][i] = Math.cos(a * i * dx);
+            }
+        }
+    }
+
+    private void precomputeDynamics() {
+        // Count first, then fill flat arrays grouped by target mode k
+        int[] counts = new int[mN];
+        this.generateTriads(counts, null, null, null);
+
+        mModeStart = new int[mN + 1];
+        for (int k = 0; k < mN; k++) {
+            mModeStart[k + 1] = mModeStart[k] + counts[k];
+        }
+
+        mPairs = new int[mModeStart[mN]];
+        mValues = new double[mModeStart[mN]];
+        int[] fill = new int[mN];
+        System.arraycopy(mModeStart, 0, fill, 0, mN);
+        this.generateTriads(null, fill, mPairs, mValues);
+    }
+
+    private void generateTriads(int[] counts, int[] fill, int[] pairs, double[] values) {
+        int[] k = new int[3];
+
+        for (int i = 0; i < mN; i++) {
+            int[] wi = mWavenumbers[i];
+            for (int j = i; j < mN; j++) {
+                int[] wj = mWavenumbers[j];
+
+                // Partner wave vectors: sum or difference on each axis
+                for (int combo = 0; combo < 8; combo++) {
+                    boolean valid = true;
+                    for (int t = 0; t < 3; t++) {
+                        k[t] = (combo & (1 << t)) == 0 ? wi[t] + wj[t] : Math.abs(wi[t] - wj[t]);
+                        valid &= k[t] >= 1 && k[t] <= mM;
+                    }
+                    if (!valid) {
+                        continue;
+                    }
+
+                    for (int p = 0; p < 2; p++) {
+                        int m = modeIndex(k[0], k[1], k[2], p);
+                        double value = this.structureCoefficient(m, i, j);
+                        if (i != j) {
+                            value += this.structureCoefficient(m, j, i);
+                        }
+                        if (Math.abs(value) < 1e-14) {
+                            continue;
+                        }
+
+                        if (counts != null) {
+                            counts[m]++;
+                        } else {
+                            pairs[fill[m]] = (i << 16) | j;
+                            values[fill[m]] = value;
+                            fill[m]++;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public double structureCoefficient(int k, int i, int j) {
+        // T(k, i, j) = <u_k, u_i x w_j> / (pi / 2)^3, summed over the cyclic axis triples (d, e, f)
+        // of (u_i x w_j)_d = u_i,e w_j,f - u_i,f w_j,e. The 1-D integrals are each pi / 4 times a
+        // signed count of vanishing frequencies, so the (pi / 4)^3 / (pi / 2)^3 = 1 / 8 comes out front.
+        int[] wk = mWavenumbers[k];
+        int[] wi = mWavenumbers[i];
+        int[] wj = mWavenumbers[j];
+        double[] ak = mPolarizations[k];
+        double[] ai = mPolarizations[i];
+        double[] aj = mPolarizations[j];
+
+        // Vorticity amplitude of j: A x k
+        double[] w = {
+                aj[1] * wj[2] - aj[2] * wj[1],
+                aj[2] * wj[0] - aj[0] * wj[2],
+                aj[0] * wj[1] - aj[1] * wj[0]};
+
+        double sum = 0.0;
+        for (int d = 0; d < 3; d++) {
+            int e = (d + 1) % 3;
+            int f = (d + 2) % 3;
+
+            int axisD = ssc(wk[d], wj[d], wi[d]);
+            if (axisD == 0) {
+                continue;
+            }
+
+            double first = ai[e] * w[f] * ssc(wi[e], wj[e], wk[e]) * ccc(wk[f], wi[f], wj[f]);
+            double second = ai[f] * w[e] * ssc(wi[f], wj[f], wk[f]) * ccc(wk[e], wi[e], wj[e]);
+            sum += ak[d] * axisD * (first - second);
+        }
+
+        return sum / 8.0;
+    }
+
+    private static int ssc(int p, int q, int r) {
+        // Integral of sin(px) sin(qx) cos(rx) over [0, pi], in units of pi / 4
+        return delta(p - q + r) + delta(p - q - r) - delta(p + q + r) - delta(p + q - r);
+    }
+
+    private static int ccc(int p, int q, int r) {
+        // Integral of cos(px) cos(qx) cos(rx) over [0, pi], in units of pi / 4
+        return delta(p + q + r) + delta(p + q - r) + delta(p - q + r) + delta(-p + q + r);
+    }
+
+    private static int delta(int n) {
+        return n == 0 ? 1 : 0;
+    }
+
+    public double advectionTerm(int k, double[] q) {
+        // dc_k/dt = sum over stored pairs {i, j} of value * q_i * q_j
+        double sum = 0.0;
+        for (int p = mModeStart[k]; p < mModeStart[k + 1]; p++) {
+            int pair = mPairs[p];
+            sum += mValues[p] * q[pair >>> 16] * q[pair & 0xffff];
+        }
+        return sum;
+    }
+
+    public int getTriadCount() {
+        return mValues.length;
+    }
+
+    public final int mX;
+    public final int mM;
+    public final int mN;
+    public int[][] mWavenumbers;
+    public double[][] mPolarizations;
+    public double[] mEigenvalues;
+    public double[][] mSin;
+    public double[][] mCos;
+
+    private int[] mModeStart;
+    private int[] mPairs;
+    private double[] mValues;
+}
@@ -0,0 +1,328 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.joechamm.eigenfluids;
+
+import java.util.Random;
+
+public class BoxEigenFluidSolver {
+
+    // Eigenfluid solver on a 3-D box, the counterpart of EigenFluidSolver. The structure coefficients
+    // come from BoxBasis's direct triad generation, and the velocity grid is expanded separably:
+    // coefficients are folded into per-wave-vector amplitudes, then contracted with the 1-D sin/cos
+    // tables one axis at a time, which costs M^3 G + M^2 G^2 + M G^3 per component instead of N G^3.
+    // The velocity components are stored collocated on the (G + 1)^3 grid nodes; particles live in
+    // [0, 1]^3 and are advected with RK4 and trilinear sampling.
+
+    public BoxEigenFluidSolver(int gridResolution, int maxWavenumber, int numParticles) {
+        this(gridResolution, maxWavenumber, numParticles, new Random().nextLong());
+    }
+
+    public BoxEigenFluidSolver(int gridResolution, int maxWavenumber, int numParticles, long particleSeed) {
+        mBasis = new BoxBasis(gridResolution, maxWavenumber);
+        mN = mBasis.mN;
+        mM = mBasis.mM;
+        mX = gridResolution;
+
+        mCoefficients = new double[mN];
+        mForcesDW = new double[mN];
+        mDecay = new double[mN];
+        mDwt = new double[4][mN];
+        mQn = new double[3][mN];
+
+        int nodes = (mX + 1) * (mX + 1) * (mX + 1);
+        mVelocity = new double[3][nodes];
+        mAmplitude = new double[mM * mM * mM];
+        mStage1 = new double[mM * mM * (mX + 1)];
+        mStage2 = new double[mM * (mX + 1) * (mX + 1)];
+        mPointSin = new double[3][mM + 1];
+        mPointCos = new double[3][mM + 1];
+
+        mNumParticles = numParticles;
+        mParticlesXYZ = new float[3 * numParticles];
+        Random random = new Random(particleSeed);
+        for (int i = 0; i < 3 * numParticles; i++) {
+            mParticlesXYZ[i] = random.nextFloat();
+        }
+
+        mCoefficients[0] = 1.0;
+        this.expandBasis();
+    }
+
+    private void updateDecay() {
+        // Viscous decay factors, cached until mDt or mViscosity change
+        for (int k = 0; k < mN; k++) {
+            mDecay[k] = Math.exp(-1.0 * mBasis.mEigenvalues[k] * mDt * mViscosity);
+        }
+        mDecayDt = mDt;
+        mDecayViscosity = mViscosity;
+    }
+
+    public void step() {
+        if (mDt != mDecayDt || mViscosity != mDecayViscosity) {
+            this.updateDecay();
+        }
+
+        double previousEnergy = currentEnergy();
+        double[] q = mCoefficients;
+
+        for (int k = 0; k < mN; k++) {
+            mDwt[0][k] = mBasis.advectionTerm(k, q);
+            mQn[0][k] = q[k] + 0.5 * mDwt[0][k] * mDt;
+        }
+        for (int k = 0; k < mN; k++) {
+            mDwt[1][k] = mBasis.advectionTerm(k, mQn[0]);
+            mQn[1][k] = q[k] + 0.5 * mDwt[1][k] * mDt;
+        }
+        for (int k = 0; k < mN; k++) {
+            mDwt[2][k] = mBasis.advectionTerm(k, mQn[1]);
+            mQn[2][k] = q[k] + mDwt[2][k] * mDt;
+        }
+        for (int k = 0; k < mN; k++) {
+            mDwt[3][k] = mBasis.advectionTerm(k, mQn[2]);
+        }
+
+        for (int k = 0; k < mN; k++) {
+            q[k] += (mDwt[0][k] + 2.0 * mDwt[1][k] + 2.0 * mDwt[2][k] + mDwt[3][k]) / 6.0 * mDt;
+        }
+
+        // The Galerkin system conserves energy; only the RK4 drift is removed here
+        if (previousEnergy > 1e-5) {
+            setEnergy(previousEnergy);
+        }
+
+        for (int k = 0; k < mN; k++) {
+            q[k] = q[k] * mDecay[k] + mForcesDW[k];
+            mForcesDW[k] = 0.0;
+        }
+
+        this.expandBasis();
+    }
+
+    public double currentEnergy() {
+        // All basis fields have the same norm, so the energy is the plain sum of squares
+        double energy = 0.0;
+        for (int k = 0; k < mN; k++) {
+            energy += mCoefficients[k] * mCoefficients[k];
+        }
+        return energy;
+    }
+
+    public void setEnergy(double desiredEnergy) {
+        double factor = Math.sqrt(desiredEnergy) / Math.sqrt(currentEnergy());
+        for (int k = 0; k < mN; k++) {
+            mCoefficients[k] *= factor;
+        }
+    }
+
+    public void addForce(double x, double y, double z, double fx, double fy, double fz) {
+        // Project a point impulse at (x, y, z) in [0, 1]^3 onto the modes; applied on the next step
+        double[] p = {x * Math.PI, y * Math.PI, z * Math.PI};
+        for (int t = 0; t < 3; t++) {
+            for (int a = 1; a <= mM; a++) {
+                mPointSin[t][a] = Math.sin(a * p[t]);
+                mPointCos[t][a] = Math.cos(a * p[t]);
+            }
+        }
+
+        double[][] s = mPointSin;
+        double[][] c = mPointCos;
+        for (int k = 0; k < mN; k++) {
+            int[] w = mBasis.mWavenumbers[k];
+            double[] A = mBasis.mPolarizations[k];
+
+            double ux = A[0] * s[0][w[0]] * c[1][w[1]] * c[2][w[2]];
+            double uy = A[1] * c[0][w[0]] * s[1][w[1]] * c[2][w[2]];
+            double uz = A[2] * c[0][w[0]] * c[1][w[1]] * s[2][w[2]];
+
+            mForcesDW[k] += (ux * fx + uy * fy + uz * fz) * mDt;
+        }
+    }
+
+    public void expandBasis() {
+        double[] amp = mAmplitude;
+        double[][] sin = mBasis.mSin;
+        double[][] cos = mBasis.mCos;
+
+        for (int d = 0; d < 3; d++) {
+            // Fold both polarizations of each wave vector into one amplitude per component
+            for (int v = 0; v < amp.length; v++) {
+                amp[v] = mCoefficients[2 * v] * mBasis.mPolarizations[2 * v][d]
+                        + mCoefficients[2 * v + 1] * mBasis.mPolarizations[2 * v + 1][d];
+            }
+
+            // Component d has the sine along its own axis
+            this.expandComponent(amp, d == 0 ? sin : cos, d == 1 ? sin : cos, d == 2 ? sin : cos, mVelocity[d]);
+        }
+    }
+
+    private void expandComponent(double[] amp, double[][] tx, double[][] ty, double[][] tz, double[] out) {
+        int M = mM;
+        int G = mX + 1;
+
+        // z: stage1[(a, b), l] = sum_c amp[a, b, c] tz[c][l]
+        double[] s1 = mStage1;
+        for (int ab = 0; ab < M * M; ab++) {
+            int row = ab * G;
+            for (int l = 0; l < G; l++) {
+                s1[row + l] = 0.0;
+            }
+            for (int c = 0; c < M; c++) {
+                double value = amp[ab * M + c];
+                double[] table = tz[c + 1];
+                for (int l = 0; l < G; l++) {
+                    s1[row + l] += value * table[l];
+                }
+            }
+        }
+
+        // y: stage2[(a, j), l] = sum_b stage1[(a, b), l] ty[b][j]
+        double[] s2 = mStage2;
+        for (int a = 0; a < M; a++) {
+            for (int j = 0; j < G; j++) {
+                int row = (a * G + j) * G;
+                for (int l = 0; l < G; l++) {
+                    s2[row + l] = 0.0;
+                }
+                for (int b = 0; b < M; b++) {
+                    double value = ty[b + 1][j];
+                    int src = (a * M + b) * G;
+                    for (int l = 0; l < G; l++) {
+                        s2[row + l] += value * s1[src + l];
+                    }
+                }
+            }
+        }
+
+        // x: out[(i, j), l] = sum_a stage2[(a, j), l] tx[a][i]
+        for (int i = 0; i < G; i++) {
+            for (int j = 0; j < G; j++) {
+                int row = (i * G + j) * G;
+                for (int l = 0; l < G; l++) {
+                    out[row + l] = 0.0;
+                }
+                for (int a = 0; a < M; a++) {
+                    double value = tx[a + 1][i];
+                    int src = (a * G + j) * G;
+                    for (int l = 0; l < G; l++) {
+                        out[row + l] += value * s2[src + l];
+                    }
+                }
+            }
+        }
+    }
+
+    public void sampleVelocity(double x, double y, double z, double[] out) {
+        // Trilinear interpolation of the node velocities; (x, y, z) in [0, 1]^3, clamped to the box
+        int G = mX + 1;
+        double gx = clampDbl(x, 0.0, 1.0) * mX;
+        double gy = clampDbl(y, 0.0, 1.0) * mX;
+        double gz = clampDbl(z, 0.0, 1.0) * mX;
+
+        int i = Math.min((int) gx, mX - 1);
+        int j = Math.min((int) gy, mX - 1);
+        int l = Math.min((int) gz, mX - 1);
+        double fx = gx - i;
+        double fy = gy - j;
+        double fz = gz - l;
+
+        int n000 = (i * G + j) * G + l;
+        int n100 = n000 + G * G;
+        int n010 = n000 + G;
+        int n110 = n100 + G;
+
+        for (int d = 0; d < 3; d++) {
+            double[] f = mVelocity[d];
+            double c00 = f[n000] + fz * (f[n000 + 1] - f[n000]);
+            double c01 = f[n010] + fz * (f[n010 + 1] - f[n010]);
+            double c10 = f[n100] + fz * (f[n100 + 1] - f[n100]);
+            double c11 = f[n110] + fz * (f[n110 + 1] - f[n110]);
+            double c0 = c00 + fy * (c01 - c00);
+            double c1 = c10 + fy * (c11 - c10);
+            out[d] = c0 + fx * (c1 - c0);
+        }
+    }
+
+    public void advectParticles() {
+        double pdt = mDt * mPDTMult;
+        double[] v0 = mSample0;
+        double[] v1 = mSample1;
+        double[] v2 = mSample2;
+        double[] v3 = mSample3;
+        float[] p = mParticlesXYZ;
+
+        for (int n = 0; n < mNumParticles; n++) {
+            double x = p[n * 3];
+            double y = p[n * 3 + 1];
+            double z = p[n * 3 + 2];
+
+            sampleVelocity(x, y, z, v0);
+            sampleVelocity(x + 0.5 * pdt * v0[0], y + 0.5 * pdt * v0[1], z + 0.5 * pdt * v0[2], v1);
+            sampleVelocity(x + 0.5 * pdt * v1[0], y + 0.5 * pdt * v1[1], z + 0.5 * pdt * v1[2], v2);
+            sampleVelocity(x + pdt * v2[0], y + pdt * v2[1], z + pdt * v2[2], v3);
+
+            x += pdt * (v0[0] + 2.0 * v1[0] + 2.0 * v2[0] + v3[0]) / 6.0;
+            y += pdt * (v0[1] + 2.0 * v1[1] + 2.0 * v2[1] + v3[1]) / 6.0;
+            z += pdt * (v0[2] + 2.0 * v1[2] + 2.0 * v2[2] + v3[2]) / 6.0;
+
+            p[n * 3] = (float) clampDbl(x, mMargin, 1.0 - mMargin);
+            p[n * 3 + 1] = (float) clampDbl(y, mMargin, 1.0 - mMargin);
+            p[n * 3 + 2] = (float) clampDbl(z, mMargin, 1.0 - mMargin);
+        }
+    }
+
+    public double clampDbl(double val, double min, double max) {
+        if (val < min)
+            return min;
+        return Math.min(val, max);
+    }
+
+    public final BoxBasis mBasis;
+    public final int mN;
+    public final int mM;
+    public final int mX;
+    public final double[] mCoefficients;
+    public final double[] mForcesDW;
+    public final double[][] mVelocity;
+    public final float[] mParticlesXYZ;
+    public final int mNumParticles;
+    public double mViscosity;
+    public double mDt = 0.1;
+    public double mPDTMult = 1.0;
+    public double mMargin = 1e-7;
+
+    private final double[] mDecay;
+    private double mDecayDt = Double.NaN;
+    private double mDecayViscosity = Double.NaN;
+    private final double[][] mDwt;
+    private final double[][] mQn;
+    private final double[] mAmplitude;
+    private final double[] mStage1;
+    private final double[] mStage2;
+    private final double[][] mPointSin;
+    private final double[][] mPointCos;
+    private final double[] mSample0 = new double[3];
+    private final double[] mSample1 = new double[3];
+    private final double[] mSample2 = new double[3];
+    private final double[] mSample3 = new double[3];
+}
@@ -0,0 +1,112 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class CoefficientPlayer {
+
+    // Reads back a stream written by CoefficientRecorder, one coefficient vector per frame.
+
+    public CoefficientPlayer(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            mBuffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (mBuffer.getInt(CoefficientRecorder.OFFSET_MAGIC) != CoefficientRecorder.MAGIC
+                || mBuffer.getInt(CoefficientRecorder.OFFSET_VERSION) != CoefficientRecorder.VERSION) {
+            throw new IOException("Not a coefficient recording: " + file);
+        }
+
+        mN = mBuffer.getInt(CoefficientRecorder.OFFSET_N);
+        mFlags = mBuffer.getInt(CoefficientRecorder.OFFSET_FLAGS);
+        mParticleSeed = mBuffer.getLong(CoefficientRecorder.OFFSET_SEED);
+        mDt = mBuffer.getDouble(CoefficientRecorder.OFFSET_DT);
+        mKeyframeInterval = mBuffer.getInt(CoefficientRecorder.OFFSET_KEYFRAME_INTERVAL);
+        mFrameCount = mBuffer.getInt(CoefficientRecorder.OFFSET_FRAME_COUNT);
+        mCurrent = new double[mN];
+    }
+
+    public boolean next(double[] coefficients) {
+        // Decodes the next frame into coefficients, returning false at the end of the stream
+        if (mFrame == mFrameCount) {
+            return false;
+        }
+
+        boolean deltas = (mFlags & CoefficientRecorder.FLAG_DELTA) != 0;
+        boolean quantized = (mFlags & CoefficientRecorder.FLAG_FLOAT) != 0;
+        int pos = (int) CoefficientRecorder.frameOffset(mN, mFlags, mKeyframeInterval, mFrame);
+
+        if (deltas && mFrame % mKeyframeInterval != 0) {
+            double scale = mBuffer.getDouble(pos);
+            for (int k = 0; k < mN; k++) {
+                mCurrent[k] += mBuffer.getShort(pos + 8 + k * 2) * scale;
+            }
+        } else {
+            for (int k = 0; k < mN; k++) {
+                mCurrent[k] = quantized ? mBuffer.getFloat(pos + k * 4) : mBuffer.getDouble(pos + k * 8);
+            }
+        }
+
+        System.arraycopy(mCurrent, 0, coefficients, 0, mN);
+        mFrame++;
+        return true;
+    }
+
+    public void seek(int frame) {
+        // Rewind to the keyframe at or before frame, then decode forward
+        if (frame < 0 || frame > mFrameCount) {
+            throw new IllegalArgumentException("Frame " + frame + " outside [0, " + mFrameCount + "]");
+        }
+
+        mFrame = frame - frame % mKeyframeInterval;
+        while (mFrame < frame) {
+            if (!next(mCurrent)) {
+                break;
+            }
+        }
+    }
+
+    public int getFrame() {
+        return mFrame;
+    }
+
+    public final int mN;
+    public final int mFlags;
+    public final long mParticleSeed;
+    public final double mDt;
+    public final int mFrameCount;
+
+    private final int mKeyframeInterval;
+    private final double[] mCurrent;
+    private final MappedByteBuffer mBuffer;
+    private int mFrame;
+}
@@ -0,0 +1,168 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class CoefficientRecorder {
+
+    // Appends per-step coefficient vectors to a preallocated memory-mapped file. Frames are
+    // optionally stored as deltas against the previously reconstructed frame (with a keyframe
+    // every KEYFRAME_INTERVAL frames) and optionally quantized to float. A delta frame is a
+    // scale followed by shorts, with the scale set from that frame's largest delta so nothing
+    // clips. Deltas are taken against what the player will reconstruct, so quantization error
+    // does not accumulate.
+
+    public static final int MAGIC = 0x45464352; // "EFCR"
+    public static final int VERSION = 3;
+    public static final int HEADER_SIZE = 48;
+    public static final int FLAG_DELTA = 1;
+    public static final int FLAG_FLOAT = 2;
+    public static final int KEYFRAME_INTERVAL = 256;
+
+    static final int OFFSET_MAGIC = 0;
+    static final int OFFSET_VERSION = 4;
+    static final int OFFSET_N = 8;
+    static final int OFFSET_FLAGS = 12;
+    static final int OFFSET_SEED = 16;
+    static final int OFFSET_DT = 24;
+    static final int OFFSET_KEYFRAME_INTERVAL = 32;
+    static final int OFFSET_CAPACITY = 36;
+    static final int OFFSET_FRAME_COUNT = 40;
+
+    public CoefficientRecorder(File file, int N, int capacity, int flags, long particleSeed, double dt) throws IOException {
+        mN = N;
+        mCapacity = capacity;
+        mFlags = flags;
+        mReconstructed = new double[mN];
+
+        long size = frameOffset(N, flags, KEYFRAME_INTERVAL, capacity);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+            mBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        mBuffer.putInt(OFFSET_MAGIC, MAGIC);
+        mBuffer.putInt(OFFSET_VERSION, VERSION);
+        mBuffer.putInt(OFFSET_N, mN);
+        mBuffer.putInt(OFFSET_FLAGS, mFlags);
+        mBuffer.putLong(OFFSET_SEED, particleSeed);
+        mBuffer.putDouble(OFFSET_DT, dt);
+        mBuffer.putInt(OFFSET_KEYFRAME_INTERVAL, KEYFRAME_INTERVAL);
+        mBuffer.putInt(OFFSET_CAPACITY, mCapacity);
+        mBuffer.putInt(OFFSET_FRAME_COUNT, 0);
+    }
+
+    public static int keyframeSize(int N, int flags) {
+        return N * ((flags & FLAG_FLOAT) != 0 ? 4 : 8);
+    }
+
+    public static int deltaFrameSize(int N, int flags) {
+        // The frame's delta scale, then one short per coefficient
+        return (flags & FLAG_DELTA) != 0 ? 8 + N * 2 : keyframeSize(N, flags);
+    }
+
+    public static long frameOffset(int N, int flags, int keyframeInterval, int frame) {
+        int keyframeSize = keyframeSize(N, flags);
+        int deltaFrameSize = deltaFrameSize(N, flags);
+        int segment = frame / keyframeInterval;
+        int within = frame % keyframeInterval;
+
+        long offset = HEADER_SIZE + (long) segment * (keyframeSize + (long) (keyframeInterval - 1) * deltaFrameSize);
+        if (within > 0) {
+            offset += keyframeSize + (long) (within - 1) * deltaFrameSize;
+        }
+        return offset;
+    }
+
+    public boolean append(double[] coefficients) {
+        // Returns false once the preallocated file is full
+        if (mFrameCount == mCapacity) {
+            return false;
+        }
+
+        boolean deltas = (mFlags & FLAG_DELTA) != 0;
+        boolean quantize = (mFlags & FLAG_FLOAT) != 0;
+        int pos = (int) frameOffset(mN, mFlags, KEYFRAME_INTERVAL, mFrameCount);
+
+        if (deltas && mFrameCount % KEYFRAME_INTERVAL != 0) {
+            double peak = 0.0;
+            for (int k = 0; k < mN; k++) {
+                peak = Math.max(peak, Math.abs(coefficients[k] - mReconstructed[k]));
+            }
+
+            // The largest delta maps to Short.MAX_VALUE, so every rounded delta fits
+            double scale = peak / Short.MAX_VALUE;
+            double inverse = scale > 0.0 ? 1.0 / scale : 0.0;
+            mBuffer.putDouble(pos, scale);
+
+            for (int k = 0; k < mN; k++) {
+                long q = Math.round((coefficients[k] - mReconstructed[k]) * inverse);
+                mBuffer.putShort(pos + 8 + k * 2, (short) q);
+                mReconstructed[k] += q * scale;
+            }
+        } else {
+            for (int k = 0; k < mN; k++) {
+                double value = coefficients[k];
+
+                if (quantize) {
+                    float q = (float) value;
+                    mBuffer.putFloat(pos + k * 4, q);
+                    value = q;
+                } else {
+                    mBuffer.putDouble(pos + k * 8, value);
+                }
+
+                mReconstructed[k] = value;
+            }
+        }
+
+        mFrameCount++;
+        mBuffer.putInt(OFFSET_FRAME_COUNT, mFrameCount);
+        return true;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public void close() {
+        mBuffer.force();
+    }
+
+    private final int mN;
+    private final int mCapacity;
+    private final int mFlags;
+    private final double[] mReconstructed;
+    private final MappedByteBuffer mBuffer;
+    private int mFrameCount;
+}
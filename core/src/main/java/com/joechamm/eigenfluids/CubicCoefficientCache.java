@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+public class CubicCoefficientCache {
+
+    // Per-cell bicubic Catmull-Rom polynomials for both velocity components. Rebuilt once per
+    // step from the padded grid so each particle sample is a 4x4 Horner evaluation instead of
+    // rebuilding the stencil weights.
+
+    public CubicCoefficientCache(int x, int y) {
+        mX = x;
+        mY = y;
+
+        mU = new double[mX * mY * 16];
+        mV = new double[mX * mY * 16];
+    }
+
+    public void build(PaddedVelocityGrid grid) {
+        buildComponent(grid.mU, grid.mStride, mU, 0, mX, 0, mY);
+        buildComponent(grid.mV, grid.mStride, mV, 0, mX, 0, mY);
+    }
+
+    public void build(PaddedVelocityGrid grid, ExpansionTiles tiles) {
+        // Rebuild only the cells anchored in active tiles. A sampled cell's anchor node is part of
+        // its stencil, and the tile reach covers the whole stencil, so every cell a particle can
+        // read is rebuilt from current nodes.
+        for (int t = 0; t < tiles.getActiveCount(); t++) {
+            int tile = tiles.getActiveTile(t);
+            int i0 = tiles.nodeStartX(tile);
+            int i1 = Math.min(tiles.nodeEndX(tile), mX);
+            int j0 = tiles.nodeStartY(tile);
+            int j1 = Math.min(tiles.nodeEndY(tile), mY);
+
+            buildComponent(grid.mU, grid.mStride, mU, i0, i1, j0, j1);
+            buildComponent(grid.mV, grid.mStride, mV, i0, i1, j0, j1);
+        }
+    }
+
+    private void buildComponent(double[] f, int stride, double[] a, int i0, int i1, int j0, int j1) {
+        // Cells [i0, i1) x [j0, j1)
+        double[] g = mScratch;
+
+        for (int i = i0; i < i1; i++) {
+            for (int j = j0; j < j1; j++) {
+                // Stencil origin is node (i - 1, j - 1), which is padded index (i, j)
+                int n = i * stride + j;
+
+                // g = F * M^T, contracting the stencil against the y weights
+                for (int r = 0; r < 4; r++) {
+                    int row = n + r * stride;
+                    double f0 = f[row];
+                    double f1 = f[row + 1];
+                    double f2 = f[row + 2];
+                    double f3 = f[row + 3];
+
+                    for (int q = 0; q < 4; q++) {
+                        g[r * 4 + q] = CR[q][0] * f0 + CR[q][1] * f1 + CR[q][2] * f2 + CR[q][3] * f3;
+                    }
+                }
+
+                // a = M * g, contracting against the x weights
+                int cell = (i * mY + j) * 16;
+                for (int p = 0; p < 4; p++) {
+                    for (int q = 0; q < 4; q++) {
+                        a[cell + p * 4 + q] = CR[p][0] * g[q] + CR[p][1] * g[4 + q]
+                                + CR[p][2] * g[8 + q] + CR[p][3] * g[12 + q];
+                    }
+                }
+            }
+        }
+    }
+
+    public void sample(double xx, double yy, double[] out) {
+        // Same staggering as PaddedVelocityGrid.sampleCubic()
+        xx *= mX;
+        yy *= mY;
+
+        out[0] = evaluate(mU, xx, yy - 0.5);
+        out[1] = evaluate(mV, xx - 0.5, yy);
+    }
+
+    public double evaluate(double[] a, double gx, double gy) {
+        gx = Math.min(Math.max(gx, 0.0), mX);
+        gy = Math.min(Math.max(gy, 0.0), mY);
+
+        int i = Math.min((int) gx, mX - 1);
+        int j = Math.min((int) gy, mY - 1);
+        double tx = gx - i;
+        double ty = gy - j;
+
+        int c = (i * mY + j) * 16;
+
+        double r0 = ((a[c + 3] * ty + a[c + 2]) * ty + a[c + 1]) * ty + a[c];
+        double r1 = ((a[c + 7] * ty + a[c + 6]) * ty + a[c + 5]) * ty + a[c + 4];
+        double r2 = ((a[c + 11] * ty + a[c + 10]) * ty + a[c + 9]) * ty + a[c + 8];
+        double r3 = ((a[c + 15] * ty + a[c + 14]) * ty + a[c + 13]) * ty + a[c + 12];
+
+        return ((r3 * tx + r2) * tx + r1) * tx + r0;
+    }
+
+    // Catmull-Rom basis, CR[power][node]
+    private static final double[][] CR = {
+            {0.0, 1.0, 0.0, 0.0},
+            {-0.5, 0.0, 0.5, 0.0},
+            {1.0, -2.5, 2.0, -0.5},
+            {-0.5, 1.5, -1.5, 0.5}
+    };
+
+    private final double[] mScratch = new double[16];
+
+    public final int mX;
+    public final int mY;
+    public final double[] mU;
+    public final double[] mV;
+}
@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+public class DyeField implements WorkerPool.Task {
+
+    // Passive dye density on its own grid, advected semi-Lagrangian style by the solver's velocity.
+    // Cells sit at cell centers of the unit square. Each step back-traces every cell with a
+    // midpoint rule and samples the previous density, split into tiles across a worker pool.
+
+    public DyeField(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+
+        mDensity = new float[mWidth * mHeight];
+        mNext = new float[mWidth * mHeight];
+
+        mTilesX = (mWidth + TILE_SIZE - 1) / TILE_SIZE;
+        mTilesY = (mHeight + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    public void advect(EigenFluidSolver solver, double dt, WorkerPool pool) {
+        mSolver = solver;
+        mStepDt = dt;
+
+        pool.run(this, mTilesX * mTilesY);
+
+        float[] tmp = mDensity;
+        mDensity = mNext;
+        mNext = tmp;
+
+        mSolver = null;
+    }
+
+    public void run(int chunk, int worker) {
+        int x0 = (chunk % mTilesX) * TILE_SIZE;
+        int y0 = (chunk / mTilesX) * TILE_SIZE;
+        int x1 = Math.min(x0 + TILE_SIZE, mWidth);
+        int y1 = Math.min(y0 + TILE_SIZE, mHeight);
+
+        EigenFluidSolver solver = mSolver;
+        double dt = mStepDt;
+        double dx = 1.0 / mWidth;
+        double dy = 1.0 / mHeight;
+        float decay = (float) mDecay;
+
+        for (int j = y0; j < y1; j++) {
+            double y = (j + 0.5) * dy;
+            for (int i = x0; i < x1; i++) {
+                double x = (i + 0.5) * dx;
+
+                // Midpoint back-trace
+                double mx = x - 0.5 * dt * solver.sampleVelocityX(x, y);
+                double my = y - 0.5 * dt * solver.sampleVelocityY(x, y);
+                double px = x - dt * solver.sampleVelocityX(mx, my);
+                double py = y - dt * solver.sampleVelocityY(mx, my);
+
+                mNext[j * mWidth + i] = decay * sample(px, py);
+            }
+        }
+    }
+
+    public float sample(double x, double y) {
+        // Bilinear lookup of the current density with clamp-to-edge
+        double gx = Math.min(Math.max(x * mWidth - 0.5, 0.0), mWidth - 1);
+        double gy = Math.min(Math.max(y * mHeight - 0.5, 0.0), mHeight - 1);
+
+        int i = Math.min((int) gx, mWidth - 2);
+        int j = Math.min((int) gy, mHeight - 2);
+        float tx = (float) (gx - i);
+        float ty = (float) (gy - j);
+
+        int n = j * mWidth + i;
+        float d0 = mDensity[n] + tx * (mDensity[n + 1] - mDensity[n]);
+        float d1 = mDensity[n + mWidth] + tx * (mDensity[n + mWidth + 1] - mDensity[n + mWidth]);
+
+        return d0 + ty * (d1 - d0);
+    }
+
+    public void addDye(double x, double y, double radius, double amount) {
+        // Gaussian splat centered at (x, y) in unit coordinates
+        int i0 = Math.max((int) ((x - 2.0 * radius) * mWidth), 0);
+        int i1 = Math.min((int) ((x + 2.0 * radius) * mWidth) + 1, mWidth);
+        int j0 = Math.max((int) ((y - 2.0 * radius) * mHeight), 0);
+        int j1 = Math.min((int) ((y + 2.0 * radius) * mHeight) + 1, mHeight);
+        double inv = 1.0 / (radius * radius);
+
+        for (int j = j0; j < j1; j++) {
+            double ry = (j + 0.5) / mHeight - y;
+            for (int i = i0; i < i1; i++) {
+                double rx = (i + 0.5) / mWidth - x;
+                mDensity[j * mWidth + i] += (float) (amount * Math.exp(-(rx * rx + ry * ry) * inv));
+            }
+        }
+    }
+
+    public float[] getDensity() {
+        return mDensity;
+    }
+
+    private static final int TILE_SIZE = 32;
+
+    public final int mWidth;
+    public final int mHeight;
+    public double mDecay = 1.0;
+
+    private final int mTilesX;
+    private final int mTilesY;
+    private float[] mDensity;
+    private float[] mNext;
+    private EigenFluidSolver mSolver;
+    private double mStepDt;
+}
@@ -0,0 +1,885 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.Math;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class EigenFluidSolver {
+
+    public EigenFluidSolver(int gridResolution, int N, int numParticles) {
+        this(gridResolution, N, numParticles, new Random().nextLong());
+    }
+
+    public EigenFluidSolver(int gridResolution, int N, int numParticles, long particleSeed) {
+        mNumParticles = numParticles;
+        mParticleSeed = particleSeed;
+        mParticlesXY = initialPositions(mNumParticles, true, particleSeed);
+
+        mX = gridResolution;
+        mY = gridResolution;
+
+        mN = N;
+        mVelocityField = new double[2][mX + 1][mY + 1];
+        mVelocityGrid = new PaddedVelocityGrid(mX, mY);
+        mCubicCache = new CubicCoefficientCache(mX, mY);
+        mExpansionTiles = new ExpansionTiles(mX, mY, EXPANSION_TILE_SIZE);
+        mCoefficients = new double[mN];
+        mForcesDW = new double[mN];
+
+        // Precomputed data is shared with every other solver of the same configuration
+        mBasis = BasisRegistry.acquire(gridResolution, N);
+        mNSqrt = mBasis.mNSqrt;
+        mBasisLookupTable = mBasis.mBasisLookupTable;
+        mBasisReverseLookupTable = mBasis.mBasisReverseLookupTable;
+        mVelocityBasis = mBasis.mVelocityBasis;
+        mPackedCk = mBasis.mPackedCk;
+        mMatrixFree = mBasis.mMatrixFree;
+        mMatrixFreeAdvection = mPackedCk == null;
+        mScaledCoefficients = new double[mN];
+        mEigenvalues = mBasis.mEigenvalues;
+        mInverseEigenvalues = mBasis.mInverseEigenvalues;
+        mInverseEigenvaluesSqrt = mBasis.mInverseEigenvaluesSqrt;
+
+        mForceProjector = new ForceProjector(mBasisLookupTable, mN, mNSqrt, FORCE_BATCH_SIZE);
+
+        mActiveModeList = new int[mN];
+        mModeMask = new double[mN];
+        this.setActiveModes(mN);
+        mActiveParticles = mNumParticles;
+
+        mCoefficients[0] = 1.0;
+        mForcesDW[0] = 1.0;
+    }
+
+    public void advance() {
+        // One frame of simulation: dynamics (or replay), particles, then dye
+        FrameProfiler profiler = mProfiler;
+
+        if (mPlayer != null) {
+            // Replay has no dynamics; its expansion and advection are timed together
+            profiler.begin(FrameProfiler.PHASE_ADVECT);
+            this.replayStep();
+            profiler.end(FrameProfiler.PHASE_ADVECT);
+        } else {
+            profiler.begin(FrameProfiler.PHASE_STEP);
+            this.step();
+            profiler.end(FrameProfiler.PHASE_STEP);
+
+            profiler.begin(FrameProfiler.PHASE_ADVECT);
+            this.advectParticles();
+            profiler.end(FrameProfiler.PHASE_ADVECT);
+        }
+
+        if (mDye != null) {
+            profiler.begin(FrameProfiler.PHASE_DYE);
+            this.advectDye();
+            profiler.end(FrameProfiler.PHASE_DYE);
+        }
+    }
+
+    public static float[] initialPositions(int numParticles, boolean randomLocations, long seed) {
+        float[] xy = new float[numParticles * 2];
+
+        if (randomLocations) {
+            // Seeded so a recorded run can be replayed with the same particles
+            Random random = new Random(seed);
+            for (int i = 0; i < numParticles; i++) {
+                xy[i * 2] = random.nextFloat();
+                xy[i * 2 + 1] = random.nextFloat();
+            }
+        } else {
+            int sqrt = (int) Math.sqrt(numParticles);
+            int idx = 0;
+            float x = 0.0f;
+            float y = 0.0f;
+            float dx = (float) 1.0 / sqrt;
+            float dy = (float) 1.0 / sqrt;
+            for (int i = 0; i < numParticles; i++) {
+                xy[i * 2] = x;
+                xy[i * 2 + 1] = y;
+
+                x += dx;
+                idx++;
+                if (idx > sqrt) {
+                    idx = 0;
+                    x = 0.0f;
+                    y += dy;
+                }
+            }
+        }
+
+        return xy;
+    }
+
+    public void step() {
+        // Advance the simulation
+        this.drainInput();
+
+        double[] dw = new double[mN];
+
+        // Calculate current energy
+        double previousEnergy = currentEnergy();
+
+        double[][] dwt = new double[4][mN];
+        double[][] qn = new double[4][mN];
+
+        qn[0] = mCoefficients;
+
+        // Inactive modes stay at zero, so only active ones advance
+        this.advectionTerm(qn[0], dwt[0]);
+        for (int a = 0; a < mActiveModes; a++) {
+            int k = mActiveModeList[a];
+            qn[1][k] = qn[0][k] + 0.5 * dwt[0][k] * mDt;
+        }
+
+        this.advectionTerm(qn[1], dwt[1]);
+        for (int a = 0; a < mActiveModes; a++) {
+            int k = mActiveModeList[a];
+            qn[2][k] = qn[0][k] + 0.5 * dwt[1][k] * mDt;
+        }
+
+        this.advectionTerm(qn[2], dwt[2]);
+        for (int a = 0; a < mActiveModes; a++) {
+            int k = mActiveModeList[a];
+            qn[3][k] = qn[0][k] + dwt[2][k] * mDt;
+        }
+
+        this.advectionTerm(qn[3], dwt[3]);
+        for (int a = 0; a < mActiveModes; a++) {
+            int k = mActiveModeList[a];
+            dw[k] = (dwt[0][k] + 2.0 * dwt[1][k] + 2.0 * dwt[2][k] + dwt[3][k]) / 6.0;
+        }
+
+        // Take the explicit step
+        for (int k = 0; k < mN; k++) {
+            mCoefficients[k] += dw[k] * mDt;
+        }
+
+        // Energy drift of the explicit step, before renormalization hides it
+        boolean telemetryDue = mTelemetry != null && mTelemetry.isDue(mStepCount);
+        double drift = 1.0;
+        if (telemetryDue && previousEnergy > 1e-5) {
+            drift = currentEnergy() / previousEnergy;
+        }
+
+        // Re-normalize energy
+        if (previousEnergy > 1e-5) {
+            setEnergy(previousEnergy);
+        }
+
+        // Dissipate energy for viscosity
+        for (int k = 0; k < mN; k++) {
+            mCoefficients[k] *= Math.exp(-1.0 * mEigenvalues[k] * mDt * mViscosity);
+            // Add external forces, which cannot excite inactive modes
+            mCoefficients[k] += mForcesDW[k];
+            mCoefficients[k] *= mModeMask[k];
+            mForcesDW[k] = 0.0;
+        }
+
+        if (telemetryDue) {
+            mTelemetry.record(mStepCount, mCoefficients, drift);
+        }
+        mStepCount++;
+
+        if (mRecorder != null && !mRecorder.append(mCoefficients)) {
+            this.stopRecording();
+        }
+
+        // Reconstruct velocity field
+        this.expandBasis();
+    }
+
+    private void advectionTerm(double[] q, double[] dwt) {
+        // dwt[k] = q . (C_k q) for the active modes, from the packed coefficients or matrix-free
+        if (mParallelAdvection != null) {
+            mParallelAdvection.evaluate(q, dwt, mMatrixFreeAdvection);
+            return;
+        }
+
+        if (mMatrixFreeAdvection) {
+            mMatrixFree.evaluate(q, dwt);
+            return;
+        }
+
+        double[] scaled = mScaledCoefficients;
+        mPackedCk.scale(q, scaled);
+        for (int a = 0; a < mActiveModes; a++) {
+            int k = mActiveModeList[a];
+            dwt[k] = mPackedCk.quadraticForm(k, q, scaled);
+        }
+    }
+
+    public void setParallelAdvection(boolean parallel) {
+        // Spread each RK4 stage across the worker pool; pays off from a few hundred modes
+        if (!parallel) {
+            mParallelAdvection = null;
+            return;
+        }
+
+        ensureWorkerPool();
+        mParallelAdvection = new ParallelAdvection(mPackedCk, mMatrixFree, mWorkerPool);
+        mParallelAdvection.partition(mActiveModeList, mActiveModes);
+    }
+
+    public void setParallelExpansion(boolean parallel) {
+        // Split full-grid expansion into row bands across the worker pool
+        if (parallel) {
+            ensureWorkerPool();
+        }
+        mParallelExpansion = parallel;
+    }
+
+    public void setMatrixFreeAdvection(boolean matrixFree) {
+        if (!matrixFree && mPackedCk == null) {
+            throw new IllegalStateException("No stored structure coefficients for " + mN + " modes");
+        }
+        mMatrixFreeAdvection = matrixFree;
+    }
+
+    public boolean chooseAdvectionMode() {
+        // Measured cost model: time both evaluators with every active mode excited and keep the faster.
+        // Results differ only by rounding, but a run that must be bit-reproducible should set the mode explicitly.
+        if (mPackedCk == null) {
+            mMatrixFreeAdvection = true;
+            return true;
+        }
+
+        double[] q = mModeMask.clone();
+        double[] result = new double[mN];
+        boolean matrixFree = mMatrixFreeAdvection;
+        long[] best = new long[2];
+
+        for (int mode = 0; mode < 2; mode++) {
+            mMatrixFreeAdvection = mode == 1;
+            best[mode] = Long.MAX_VALUE;
+            for (int rep = 0; rep < ADVECTION_TIMING_REPS + 1; rep++) {
+                long start = System.nanoTime();
+                this.advectionTerm(q, result);
+                long elapsed = System.nanoTime() - start;
+                // The first rep only warms up
+                if (rep > 0) {
+                    best[mode] = Math.min(best[mode], elapsed);
+                }
+            }
+        }
+
+        mMatrixFreeAdvection = best[1] < best[0] || (best[1] == best[0] && matrixFree);
+        return mMatrixFreeAdvection;
+    }
+
+    public void enableTelemetry(int interval, int capacity) {
+        // Sample the energy spectrum every interval steps into a ring of capacity records
+        mTelemetry = new EnergyTelemetry(mBasisLookupTable, mInverseEigenvalues, interval, capacity);
+    }
+
+    public void startRecording(File file, int capacity, int flags) throws IOException {
+        // Record every subsequent step's coefficients; the particle seed lets a replay reproduce the particles
+        stopRecording();
+        mRecorder = new CoefficientRecorder(file, mN, capacity, flags, mParticleSeed, mDt);
+    }
+
+    public void stopRecording() {
+        if (mRecorder != null) {
+            mRecorder.close();
+            mRecorder = null;
+        }
+    }
+
+    public void startReplay(CoefficientPlayer player) {
+        // The solver should have been created with player.mParticleSeed to see the recorded particles
+        if (player.mN != mN) {
+            throw new IllegalArgumentException("Recording has " + player.mN + " modes, solver has " + mN);
+        }
+
+        mPlayer = player;
+        mDt = player.mDt;
+    }
+
+    public void stopReplay() {
+        mPlayer = null;
+    }
+
+    public boolean replayStep() {
+        // Feed the next recorded coefficients to the velocity expansion and particles, skipping the dynamics
+        if (!mPlayer.next(mCoefficients)) {
+            // Continue live from the last recorded state
+            this.stopReplay();
+            return false;
+        }
+
+        this.expandBasis();
+        this.advectParticles();
+        return true;
+    }
+
+    public void attractParticles() {
+        // Bunch up particles so we can watch them advect
+        for (int i = 0; i < mNumParticles; i++) {
+            mParticlesXY[i * 2] *= 0.2;
+            mParticlesXY[i * 2] += 0.1;
+            mParticlesXY[i * 2 + 1] *= 0.2;
+            mParticlesXY[i * 2 + 1] += 0.4;
+        }
+    }
+
+    public void advectParticles() {
+        // Advect particles using RK4 and bilinear or cached bicubic velocity interpolation. With particle
+        // colors enabled, each particle's color is looked up from the step velocity in the same pass.
+
+        double pdt = mDt * mPDTMult;
+
+        boolean RK4 = true;
+        boolean RK2 = false;
+        boolean Euler = false;
+
+        double[] v0 = mSample0;
+        double[] v1 = mSample1;
+        double[] v2 = mSample2;
+        double[] v3 = mSample3;
+        float[] xy = mParticlesXY;
+        IntBuffer colors = mParticleColorInts;
+        ParticleColorMap colorMap = mParticleColorMap;
+
+        for (int i = 0; i < mActiveParticles; i++) {
+            double x = xy[i * 2];
+            double y = xy[i * 2 + 1];
+
+            double nx = 0.0;
+            double ny = 0.0;
+            double vx = 0.0;
+            double vy = 0.0;
+            if (RK4) {
+                sampleVelocity(x, y, v0);
+                sampleVelocity(x + 0.5 * pdt * v0[0], y + 0.5 * pdt * v0[1], v1);
+                sampleVelocity(x + 0.5 * pdt * v1[0], y + 0.5 * pdt * v1[1], v2);
+                sampleVelocity(x + pdt * v2[0], y + pdt * v2[1], v3);
+
+                double sx = v0[0] + 2.0 * v1[0] + 2.0 * v2[0] + v3[0];
+                double sy = v0[1] + 2.0 * v1[1] + 2.0 * v2[1] + v3[1];
+                nx = x + pdt * sx / 6.0;
+                ny = y + pdt * sy / 6.0;
+                vx = sx / 6.0;
+                vy = sy / 6.0;
+            } else if (RK2) {
+                sampleVelocity(x, y, v0);
+                sampleVelocity(x - 0.666 * pdt * v0[0], y - 0.666 * pdt * v0[1], v1);
+
+                nx = x + pdt * (v0[0] + 3.0 * v1[0]) / 4.0;
+                ny = y + pdt * (v0[1] + 3.0 * v1[1]) / 4.0;
+                vx = v0[0];
+                vy = v0[1];
+            } else if (Euler) {
+                sampleVelocity(x, y, v0);
+                nx = x + pdt * v0[0];
+                ny = y + pdt * v0[1];
+                vx = v0[0];
+                vy = v0[1];
+            }
+
+            nx = clampDbl(nx, mMargin, 1.0 - mMargin);
+            ny = clampDbl(ny, mMargin, 1.0 - mMargin);
+
+            xy[i * 2] = (float) nx;
+            xy[i * 2 + 1] = (float) ny;
+
+            if (colors != null) {
+                colors.put(i, colorMap.lookup(vx * vx + vy * vy));
+            }
+        }
+    }
+
+    public void enableParticleColors(ParticleColorMap colorMap) {
+        // Per-particle RGBA8 colors in a persistent native-order buffer, filled by advectParticles()
+        if (mParticleColors == null) {
+            mParticleColors = ByteBuffer.allocateDirect(4 * mNumParticles);
+            mParticleColors.order(ByteOrder.nativeOrder());
+            mParticleColorInts = mParticleColors.asIntBuffer();
+        }
+
+        mParticleColorMap = colorMap;
+        int rest = colorMap.lookup(0.0);
+        for (int i = 0; i < mNumParticles; i++) {
+            mParticleColorInts.put(i, rest);
+        }
+    }
+
+    public void enableDye(int width, int height) {
+        ensureWorkerPool();
+        mDye = new DyeField(width, height);
+    }
+
+    public void advectDye() {
+        if (mDye != null) {
+            mDye.advect(this, mDt * mPDTMult, mWorkerPool);
+        }
+    }
+
+    public double currentEnergy() {
+        // calculate current energy, sum of squares of coefficients since Laplacian eigenfunction basis is orthogonal
+        double energy = 0.0;
+        for (int i = 0; i < mN; i++) {
+            energy += mInverseEigenvalues[i] * (mCoefficients[i] * mCoefficients[i]);
+        }
+
+        return energy;
+    }
+
+    public void setEnergy(double desiredEnergy) {
+        double currentEnergy = this.currentEnergy();
+        double factor = Math.sqrt(desiredEnergy) / Math.sqrt(currentEnergy);
+
+        for (int i = 0; i < mN; i++) {
+            mCoefficients[i] *= factor;
+        }
+    }
+
+    public int basisLookup(int index, int component) {
+        return mBasisLookupTable[index][component];
+    }
+
+    public int basisReverseLookup(int k1, int k2) {
+        if (k1 > mNSqrt || k1 < 1 || k2 > mNSqrt || k2 < 1) {
+            // these fields do not exist
+            return -1;
+        }
+
+        return mBasisReverseLookupTable[k1][k2];
+    }
+
+    public void expandBasis() {
+        // Calculate superposition of basis fields
+
+        if (mTiledExpansion && mDye == null) {
+            // The dye samples everywhere, so it always needs the full field. Only the expanded
+            // tiles are copied to the padded grid and cached.
+            this.expandBasisTiled();
+
+            mVelocityGrid.fill(mVelocityField, mExpansionTiles);
+
+            if (mCubicAdvection) {
+                mCubicCache.build(mVelocityGrid, mExpansionTiles);
+            }
+            return;
+        }
+
+        // Row-major accumulation in place, banded across the pool when parallel expansion is on
+        mBandedExpansion.expand(mCoefficients, mActiveModeList, mActiveModes, mVelocityBasis, mVelocityField,
+                mParallelExpansion ? mWorkerPool : null);
+
+        mVelocityGrid.fill(mVelocityField);
+
+        if (mCubicAdvection) {
+            mCubicCache.build(mVelocityGrid);
+        }
+    }
+
+    public void expandBasisTiled() {
+        // Expand only the tiles the particles can reach during the next advectParticles().
+        // |u| and |v| of basis field k are bounded by 1 / sqrt(lambda_k), which bounds the
+        // RK4 substep displacement; the stencil adds up to two nodes plus half a node of staggering.
+        double speedBound = 0.0;
+        for (int k = 0; k < mN; k++) {
+            speedBound += Math.abs(mCoefficients[k]) * mInverseEigenvaluesSqrt[k];
+        }
+
+        double reach = mDt * mPDTMult * speedBound * Math.max(mX, mY) + 3.0;
+        mExpansionTiles.markParticles(mParticlesXY, mActiveParticles, reach);
+
+        double[][] u = mVelocityField[0];
+        double[][] v = mVelocityField[1];
+
+        for (int t = 0; t < mExpansionTiles.getActiveCount(); t++) {
+            int tile = mExpansionTiles.getActiveTile(t);
+            int i0 = mExpansionTiles.nodeStartX(tile);
+            int i1 = mExpansionTiles.nodeEndX(tile);
+            int j0 = mExpansionTiles.nodeStartY(tile);
+            int j1 = mExpansionTiles.nodeEndY(tile);
+
+            for (int i = i0; i < i1; i++) {
+                for (int j = j0; j < j1; j++) {
+                    u[i][j] = 0.0;
+                    v[i][j] = 0.0;
+                }
+            }
+
+            for (int a = 0; a < mActiveModes; a++) {
+                int k = mActiveModeList[a];
+                double c = mCoefficients[k];
+                double[][] bu = mVelocityBasis[k][0];
+                double[][] bv = mVelocityBasis[k][1];
+
+                for (int i = i0; i < i1; i++) {
+                    for (int j = j0; j < j1; j++) {
+                        u[i][j] += c * bu[i][j];
+                        v[i][j] += c * bv[i][j];
+                    }
+                }
+            }
+        }
+    }
+
+    public double dot(double[] v, double[] w) {
+        double sum = 0.0;
+        for (int i = 0; i < v.length; i++) {
+            sum += v[i] * w[i];
+        }
+
+        return sum;
+    }
+
+    public double[] projectForces(double[][] forcePath) {
+        double[] dw = new double[mN];
+
+        mForceProjector.add(forcePath, mDt, dw);
+        mForceProjector.flush(mDt, dw);
+
+        return dw;
+    }
+
+    public void stir(double[][] forcePath) {
+        // Project the forces straight into the pending forces, and incorporate them on the next timestep
+        mForceProjector.add(forcePath, mDt, mForcesDW);
+        mForceProjector.flush(mDt, mForcesDW);
+    }
+
+    public void setActiveModes(int count) {
+        // Keep the count modes with the smallest eigenvalues and zero the rest. Takes effect from the next step.
+        count = Math.max(1, Math.min(count, mN));
+
+        Arrays.fill(mModeMask, 0.0);
+        for (int a = 0; a < count; a++) {
+            mModeMask[mBasis.mModeOrder[a]] = 1.0;
+        }
+
+        // Active list in index order, so a full basis sums exactly as before
+        mActiveModes = 0;
+        for (int k = 0; k < mN; k++) {
+            if (mModeMask[k] != 0.0) {
+                mActiveModeList[mActiveModes++] = k;
+            } else {
+                mCoefficients[k] = 0.0;
+                mForcesDW[k] = 0.0;
+            }
+        }
+
+        if (mParallelAdvection != null) {
+            mParallelAdvection.partition(mActiveModeList, mActiveModes);
+        }
+    }
+
+    public int getActiveModes() {
+        return mActiveModes;
+    }
+
+    public void setActiveParticles(int count) {
+        // Only the first count particles are advected; the rest keep their positions
+        mActiveParticles = Math.max(0, Math.min(count, mNumParticles));
+    }
+
+    public int getActiveParticles() {
+        return mActiveParticles;
+    }
+
+    public void setGridResolution(int gridResolution) {
+        // Switch to another velocity grid. Only basis fields are (re)computed for a new resolution;
+        // the structure coefficients are shared through the registry.
+        if (gridResolution == mX) {
+            return;
+        }
+
+        BasisBundle basis = BasisRegistry.acquire(gridResolution, mN);
+        BasisRegistry.release(mBasis);
+        mBasis = basis;
+        mVelocityBasis = basis.mVelocityBasis;
+
+        mX = gridResolution;
+        mY = gridResolution;
+        mVelocityField = new double[2][mX + 1][mY + 1];
+        mVelocityGrid = new PaddedVelocityGrid(mX, mY);
+        mCubicCache = new CubicCoefficientCache(mX, mY);
+        mExpansionTiles = new ExpansionTiles(mX, mY, EXPANSION_TILE_SIZE);
+
+        this.expandBasis();
+    }
+
+    public void release() {
+        // Return the shared precomputed data to the registry and stop any worker pool the solver
+        // created itself; the solver must not step afterwards
+        if (!mReleased) {
+            mReleased = true;
+            BasisRegistry.release(mBasis);
+
+            if (mOwnsWorkerPool) {
+                mWorkerPool.shutdown();
+            }
+        }
+    }
+
+    private void ensureWorkerPool() {
+        // A pool assigned to mWorkerPool by the caller is shared and left running on release()
+        if (mWorkerPool == null) {
+            mWorkerPool = WorkerPool.forAvailableProcessors();
+            mOwnsWorkerPool = true;
+        }
+    }
+
+    public TouchInputQueue getInputQueue() {
+        return mInputQueue;
+    }
+
+    public void drainInput() {
+        // Coalesce queued touch samples into one force path. Each stroke segment pushes the fluid
+        // at its start point along the segment; the last sample of a stroke carries no force.
+        float[] sample = mTouchSample;
+
+        while (mInputQueue.poll(sample)) {
+            if (sample[2] == 0.0f && mTouchActive) {
+                mForceProjector.add(mTouchX, mTouchY,
+                        (sample[0] - mTouchX) * mTouchForce, (sample[1] - mTouchY) * mTouchForce,
+                        mDt, mForcesDW);
+            }
+
+            mTouchX = sample[0];
+            mTouchY = sample[1];
+            mTouchActive = true;
+        }
+
+        mForceProjector.flush(mDt, mForcesDW);
+    }
+
+    public double getInterpolatedValue(double x, double y, int index) {
+        int i = (int) Math.floor(x);
+        int j = (int) Math.floor(y);
+
+        double tot = 0.0;
+        int den = 0;
+
+        if (i >= 0 && i <= mX && j >= 0 && j <= mY) {
+            tot += (i + 1 - x) * (j + 1 - y) * mVelocityField[index][i][j];
+            den++;
+        }
+        if (i + 1 >= 0 && i + 1 <= mX && j >= 0 && j <= mY) {
+            tot += (x - i) * (j + 1 - y) * mVelocityField[index][i + 1][j];
+            den++;
+        }
+        if (i >= 0 && i <= mX && j + 1 >= 0 && j + 1 <= mY) {
+            tot += (i + 1 - x) * (y - j) * mVelocityField[index][i][j + 1];
+            den++;
+        }
+        if (i + 1 >= 0 && i + 1 <= mX && j + 1 >= 0 && j + 1 <= mY) {
+            tot += (x - i) * (y - j) * mVelocityField[index][i + 1][j + 1];
+            den++;
+        }
+
+        if (den == 0)
+            return 0;
+
+        return tot / (double) den;
+    }
+
+    public void sampleVelocity(double xx, double yy, double[] out) {
+        if (mCubicAdvection) {
+            mCubicCache.sample(xx, yy, out);
+        } else {
+            mVelocityGrid.sampleBilinear(xx, yy, out);
+        }
+    }
+
+    public double sampleVelocityX(double xx, double yy) {
+        // Allocation-free single-component samples, safe to call from worker threads
+        if (mCubicAdvection) {
+            return mCubicCache.evaluate(mCubicCache.mU, xx * mX, yy * mY - 0.5);
+        }
+        return mVelocityGrid.bilinear(mVelocityGrid.mU, xx * mX, yy * mY - 0.5);
+    }
+
+    public double sampleVelocityY(double xx, double yy) {
+        if (mCubicAdvection) {
+            return mCubicCache.evaluate(mCubicCache.mV, xx * mX - 0.5, yy * mY);
+        }
+        return mVelocityGrid.bilinear(mVelocityGrid.mV, xx * mX - 0.5, yy * mY);
+    }
+
+    public void setCubicAdvection(boolean cubic) {
+        // The cache is only maintained while enabled, so bring it up to date before the next sample
+        if (cubic && !mCubicAdvection) {
+            mCubicCache.build(mVelocityGrid);
+        }
+        mCubicAdvection = cubic;
+    }
+
+    public double[] bilinearVelocity(double xx, double yy) {
+        double[] v = new double[2];
+
+        xx *= mX;
+        yy *= mY;
+
+        v[0] = getInterpolatedValue(xx, yy - 0.5, 0);
+        v[1] = getInterpolatedValue(xx - 0.5, yy, 1);
+
+        return v;
+    }
+
+    public double[] cubicVelocity(double xx, double yy) {
+        double[] v = new double[2];
+
+        double[] f = new double[4];
+        double tk;
+
+        xx *= mX;
+        yy *= mY;
+
+        // calculate velocity at x, y
+        int k = 1;
+
+        int[] x = new int[4];
+        x[k] = clampInt((int) Math.floor(xx), 0, mX);
+        x[k + 1] = clampInt(x[k] + 1, 0, mX);
+        x[k + 2] = clampInt(x[k] + 2, 0, mX);
+        x[k - 1] = clampInt(x[k] - 1, 0, mX);
+
+        int[] y = new int[4];
+        y[k] = clampInt((int) Math.floor(yy), 0, mY);
+        y[k + 1] = clampInt(y[k] + 1, 0, mY);
+        y[k + 2] = clampInt(y[k] + 2, 0, mY);
+        y[k - 1] = clampInt(y[k] - 1, 0, mY);
+
+        // x component
+        f[k - 1] = mVelocityField[0][x[k - 1]][y[k]];
+        f[k] = mVelocityField[0][x[k]][y[k]];
+        f[k + 1] = mVelocityField[0][x[k + 1]][y[k]];
+        f[k + 2] = mVelocityField[0][x[k + 2]][y[k]];
+
+        tk = xx - x[k];
+
+        v[0] = f[k - 1] * (-0.5 * tk + tk * tk - 0.5 * tk * tk * tk) + f[k]
+                * (1.0 - (5.0 / 2.0) * tk * tk + (3.0 / 2.0) * tk * tk * tk)
+                + f[k + 1]
+                * (0.5 * tk + 2 * tk * tk - (3.0 / 2.0) * tk * tk * tk)
+                + f[k + 2] * (-0.5 * tk * tk + 0.5 * tk * tk * tk);
+
+        // y component
+        f[k - 1] = mVelocityField[1][x[k]][y[k - 1]];
+        f[k] = mVelocityField[1][x[k]][y[k]];
+        f[k + 1] = mVelocityField[1][x[k]][y[k + 1]];
+        f[k + 2] = mVelocityField[1][x[k]][y[k + 2]];
+
+        tk = yy - y[k];
+        v[1] = f[k - 1] * (-0.5 * tk + tk * tk - 0.5 * tk * tk * tk) + f[k]
+                * (1.0 - (5.0 / 2.0) * tk * tk + (3.0 / 2.0) * tk * tk * tk)
+                + f[k + 1]
+                * (0.5 * tk + 2 * tk * tk - (3.0 / 2.0) * tk * tk * tk)
+                + f[k + 2] * (-0.5 * tk * tk + 0.5 * tk * tk * tk);
+
+        return v;
+    }
+
+    public int clampInt(int val, int min, int max) {
+        if (val < min)
+            return min;
+        return Math.min(val, max);
+    }
+
+    public double clampDbl(double val, double min, double max) {
+        if (val < min)
+            return min;
+        return Math.min(val, max);
+    }
+
+    private static final int FORCE_BATCH_SIZE = 64;
+    private static final int INPUT_QUEUE_SIZE = 1024;
+    private static final int ADVECTION_TIMING_REPS = 3;
+    private static final int EXPANSION_TILE_SIZE = 8;
+
+    private final double[] mScaledCoefficients;
+    private IntBuffer mParticleColorInts;
+    private final BandedExpansion mBandedExpansion = new BandedExpansion();
+    private final double[] mSample0 = new double[2];
+    private final double[] mSample1 = new double[2];
+    private final double[] mSample2 = new double[2];
+    private final double[] mSample3 = new double[2];
+    private final TouchInputQueue mInputQueue = new TouchInputQueue(INPUT_QUEUE_SIZE);
+    private final float[] mTouchSample = new float[3];
+    private boolean mReleased;
+    private boolean mOwnsWorkerPool;
+    private CoefficientRecorder mRecorder;
+    private CoefficientPlayer mPlayer;
+    private double mTouchX;
+    private double mTouchY;
+    private boolean mTouchActive;
+
+    public int mX;
+    public int mY;
+    public final float[] mParticlesXY;
+    public final int mNumParticles;
+    public int mActiveParticles;
+    public int mActiveModes;
+    public final int[] mActiveModeList;
+    public final double[] mModeMask;
+    public final long mParticleSeed;
+    public BasisBundle mBasis;
+    public double[][][][] mVelocityBasis;
+    public double[] mCoefficients;
+    public double[][][] mVelocityField;
+    public PaddedVelocityGrid mVelocityGrid;
+    public CubicCoefficientCache mCubicCache;
+    public boolean mCubicAdvection = false;
+    public DyeField mDye;
+    public FrameProfiler mProfiler = new FrameProfiler();
+    public boolean mTiledExpansion = false;
+    public ExpansionTiles mExpansionTiles;
+    public WorkerPool mWorkerPool;
+    public ParallelAdvection mParallelAdvection;
+    public boolean mParallelExpansion;
+    public EnergyTelemetry mTelemetry;
+    public ByteBuffer mParticleColors;
+    public ParticleColorMap mParticleColorMap;
+    public long mStepCount;
+    public final double[] mEigenvalues;
+    public final double[] mInverseEigenvalues;
+    public final double[] mInverseEigenvaluesSqrt;
+    public final PackedStructureCoefficients mPackedCk;
+    public final MatrixFreeAdvection mMatrixFree;
+    public boolean mMatrixFreeAdvection;
+    public double mViscosity = 0.0;
+    public double mDt = 0.1;
+    public double mPDTMult = 1.0;
+    public double mMargin = 1e-7;
+    public int mN;
+    public final int mNSqrt;
+    public final int[][] mBasisLookupTable;
+    public final int[][] mBasisReverseLookupTable;
+    public double[] mForcesDW;
+    public final ForceProjector mForceProjector;
+    public double mTouchForce = 20.0;
+    public boolean mForcesPending;
+}
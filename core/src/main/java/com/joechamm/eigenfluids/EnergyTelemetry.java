@@ -0,0 +1,207 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.joechamm.eigenfluids;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+public class EnergyTelemetry {
+
+    // Energy spectrum of the coefficients every K steps: per mode, E_k = c_k^2 / lambda_k, and per
+    // wavenumber shell s = round(sqrt(lambda_k)), plus the total and the energy drift of the RK4
+    // step that setEnergy() corrects. Samples go into a preallocated little-endian ring of fixed
+    // size records, overwriting the oldest, so record() never allocates. Export layout:
+    //   header (HEADER_SIZE bytes), int shell index per mode, then records oldest first:
+    //   long step, double total, double drift, float[N] mode energies, float[shells] shell energies
+
+    public static final int MAGIC = 0x45464554; // "EFET"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 40;
+
+    public EnergyTelemetry(int[][] lookup, double[] inverseEigenvalues, int interval, int capacity) {
+        mN = inverseEigenvalues.length;
+        mInverseEigenvalues = inverseEigenvalues;
+        mInterval = Math.max(1, interval);
+        mCapacity = capacity;
+
+        mShellOfMode = new int[mN];
+        int shells = 0;
+        for (int k = 0; k < mN; k++) {
+            int k1 = lookup[k][0];
+            int k2 = lookup[k][1];
+            mShellOfMode[k] = (int) Math.round(Math.sqrt(k1 * k1 + k2 * k2));
+            shells = Math.max(shells, mShellOfMode[k] + 1);
+        }
+        mShellCount = shells;
+        mShells = new double[mShellCount];
+
+        mRecordSize = 24 + 4 * (mN + mShellCount);
+        mRing = ByteBuffer.allocate(mRecordSize * capacity);
+        mRing.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public boolean isDue(long step) {
+        return step % mInterval == 0;
+    }
+
+    public void record(long step, double[] coefficients, double drift) {
+        int base = (int) (mRecorded % mCapacity) * mRecordSize;
+
+        for (int s = 0; s < mShellCount; s++) {
+            mShells[s] = 0.0;
+        }
+
+        double total = 0.0;
+        int p = base + 24;
+        for (int k = 0; k < mN; k++) {
+            double energy = mInverseEigenvalues[k] * (coefficients[k] * coefficients[k]);
+            total += energy;
+            mShells[mShellOfMode[k]] += energy;
+            mRing.putFloat(p, (float) energy);
+            p += 4;
+        }
+        for (int s = 0; s < mShellCount; s++) {
+            mRing.putFloat(p, (float) mShells[s]);
+            p += 4;
+        }
+
+        mRing.putLong(base, step);
+        mRing.putDouble(base + 8, total);
+        mRing.putDouble(base + 16, drift);
+
+        mRecorded++;
+    }
+
+    public int getCount() {
+        return (int) Math.min(mRecorded, mCapacity);
+    }
+
+    public long getRecordedCount() {
+        return mRecorded;
+    }
+
+    public int getShellCount() {
+        return mShellCount;
+    }
+
+    public int getShell(int mode) {
+        return mShellOfMode[mode];
+    }
+
+    public double getShellEnergy(int record, int shell) {
+        // record 0 is the oldest held
+        return mRing.getFloat(offset(record) + 24 + 4 * (mN + shell));
+    }
+
+    public double getModeEnergy(int record, int mode) {
+        return mRing.getFloat(offset(record) + 24 + 4 * mode);
+    }
+
+    public double getTotalEnergy(int record) {
+        return mRing.getDouble(offset(record) + 8);
+    }
+
+    private int offset(int record) {
+        long first = mRecorded - getCount();
+        return (int) ((first + record) % mCapacity) * mRecordSize;
+    }
+
+    public void clear() {
+        mRecorded = 0;
+    }
+
+    public byte[] export() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 * mN + getCount() * mRecordSize);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        putHeader(buffer);
+        for (int r = 0; r < getCount(); r++) {
+            ByteBuffer record = mRing.duplicate();
+            record.position(offset(r));
+            record.limit(offset(r) + mRecordSize);
+            buffer.put(record);
+        }
+
+        return buffer.array();
+    }
+
+    public void export(File file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 4 * mN);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        putHeader(header);
+        header.flip();
+
+        // The ring is written as at most two runs, oldest first
+        int count = getCount();
+        int first = offset(0);
+        int firstRun = Math.min(count, mCapacity - first / mRecordSize) * mRecordSize;
+
+        ByteBuffer older = mRing.duplicate();
+        older.position(first);
+        older.limit(first + firstRun);
+        ByteBuffer newer = mRing.duplicate();
+        newer.position(0);
+        newer.limit(count * mRecordSize - firstRun);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] parts = {header, older, newer};
+            long remaining = header.remaining() + older.remaining() + newer.remaining();
+            while (remaining > 0) {
+                remaining -= channel.write(parts);
+            }
+        }
+    }
+
+    private void putHeader(ByteBuffer buffer) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(mN);
+        buffer.putInt(mShellCount);
+        buffer.putInt(mInterval);
+        buffer.putInt(mRecordSize);
+        buffer.putLong(mRecorded);
+        buffer.putInt(getCount());
+        buffer.putInt(0);
+        for (int k = 0; k < mN; k++) {
+            buffer.putInt(mShellOfMode[k]);
+        }
+    }
+
+    public final int mN;
+    public final int mInterval;
+    public final int mCapacity;
+
+    private final double[] mInverseEigenvalues;
+    private final int[] mShellOfMode;
+    private final int mShellCount;
+    private final double[] mShells;
+    private final int mRecordSize;
+    private final ByteBuffer mRing;
+    private long mRecorded;
+}
@@ -0,0 +1,172 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+public class EnsembleSolver {
+
+    // Steps M coefficient vectors against one shared set of structure coefficients. The vectors
+    // are interleaved mode-major (mode k of member m at k * M + m) so every mode's packed pairs
+    // are streamed once per RK4 stage for the whole ensemble.
+
+    public EnsembleSolver(EigenFluidSolver source, int members) {
+        this(source.mBasis, source.mDt, members);
+    }
+
+    public EnsembleSolver(BasisBundle basis, double dt, int members) {
+        this(basis.mPackedCk, basis.mEigenvalues, basis.mInverseEigenvalues, dt, members);
+    }
+
+    public EnsembleSolver(PackedStructureCoefficients ck, double[] eigenvalues, double[] inverseEigenvalues, double dt, int members) {
+        if (ck == null) {
+            throw new IllegalArgumentException("Ensembles need stored structure coefficients");
+        }
+
+        mCk = ck;
+        mEigenvalues = eigenvalues;
+        mInverseEigenvalues = inverseEigenvalues;
+        mDt = dt;
+        mN = ck.mN;
+        mM = members;
+
+        mCoefficients = new double[mN * mM];
+        mViscosity = new double[mM];
+        mDecay = new double[mN * mM];
+        mEnergy = new double[mM];
+        mScratch = new double[mM];
+        mBlockScratch = new double[2 * mM];
+        mScaled = new double[mN * mM];
+
+        mDwt = new double[4][mN * mM];
+        mQn = new double[3][mN * mM];
+
+        for (int i = 0; i < mDecay.length; i++) {
+            mDecay[i] = 1.0;
+        }
+    }
+
+    public void setCoefficients(int member, double[] coefficients) {
+        for (int k = 0; k < mN; k++) {
+            mCoefficients[k * mM + member] = coefficients[k];
+        }
+    }
+
+    public void getCoefficients(int member, double[] coefficients) {
+        for (int k = 0; k < mN; k++) {
+            coefficients[k] = mCoefficients[k * mM + member];
+        }
+    }
+
+    public void setViscosity(int member, double viscosity) {
+        // Viscous decay factors are cached so step() never calls exp()
+        mViscosity[member] = viscosity;
+        for (int k = 0; k < mN; k++) {
+            mDecay[k * mM + member] = Math.exp(-1.0 * mEigenvalues[k] * mDt * viscosity);
+        }
+    }
+
+    public void step() {
+        // Same scheme as EigenFluidSolver.step(), applied to every member at once
+        int M = mM;
+        int size = mN * M;
+        double[] q0 = mCoefficients;
+
+        this.currentEnergy(mEnergy);
+
+        this.evaluate(q0, mDwt[0]);
+        for (int i = 0; i < size; i++) {
+            mQn[0][i] = q0[i] + 0.5 * mDwt[0][i] * mDt;
+        }
+
+        this.evaluate(mQn[0], mDwt[1]);
+        for (int i = 0; i < size; i++) {
+            mQn[1][i] = q0[i] + 0.5 * mDwt[1][i] * mDt;
+        }
+
+        this.evaluate(mQn[1], mDwt[2]);
+        for (int i = 0; i < size; i++) {
+            mQn[2][i] = q0[i] + mDwt[2][i] * mDt;
+        }
+
+        this.evaluate(mQn[2], mDwt[3]);
+
+        // Take the explicit step
+        for (int i = 0; i < size; i++) {
+            q0[i] += (mDwt[0][i] + 2.0 * mDwt[1][i] + 2.0 * mDwt[2][i] + mDwt[3][i]) / 6.0 * mDt;
+        }
+
+        // Re-normalize energy per member
+        double[] factor = mScratch;
+        this.currentEnergy(factor);
+        for (int m = 0; m < M; m++) {
+            factor[m] = mEnergy[m] > 1e-5 ? Math.sqrt(mEnergy[m]) / Math.sqrt(factor[m]) : 1.0;
+        }
+
+        // Dissipate energy for viscosity
+        for (int k = 0; k < mN; k++) {
+            int base = k * M;
+            for (int m = 0; m < M; m++) {
+                q0[base + m] *= factor[m] * mDecay[base + m];
+            }
+        }
+    }
+
+    private void evaluate(double[] q, double[] dw) {
+        mCk.scaleBlock(q, mM, mScaled);
+        for (int k = 0; k < mN; k++) {
+            mCk.quadraticFormBlock(k, q, mScaled, mM, mBlockScratch, dw, k * mM);
+        }
+    }
+
+    public void currentEnergy(double[] energy) {
+        for (int m = 0; m < mM; m++) {
+            energy[m] = 0.0;
+        }
+
+        for (int k = 0; k < mN; k++) {
+            int base = k * mM;
+            for (int m = 0; m < mM; m++) {
+                double c = mCoefficients[base + m];
+                energy[m] += mInverseEigenvalues[k] * c * c;
+            }
+        }
+    }
+
+    public final int mN;
+    public final int mM;
+    public final double mDt;
+    public final double[] mCoefficients;
+    public final double[] mViscosity;
+
+    private final PackedStructureCoefficients mCk;
+    private final double[] mEigenvalues;
+    private final double[] mInverseEigenvalues;
+    private final double[] mDecay;
+    private final double[] mEnergy;
+    private final double[] mScratch;
+    private final double[] mBlockScratch;
+    private final double[] mScaled;
+    private final double[][] mDwt;
+    private final double[][] mQn;
+}
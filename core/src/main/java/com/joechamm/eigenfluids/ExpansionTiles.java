@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import java.util.Arrays;
+
+public class ExpansionTiles {
+
+    // Tracks which square tiles of velocity grid nodes can be read by particle samples during
+    // the next advection, so the basis expansion can skip the rest of the grid.
+
+    public ExpansionTiles(int x, int y, int tileSize) {
+        mX = x;
+        mY = y;
+        mTileSize = tileSize;
+
+        mTilesX = (mX + 1 + mTileSize - 1) / mTileSize;
+        mTilesY = (mY + 1 + mTileSize - 1) / mTileSize;
+
+        mMask = new boolean[mTilesX * mTilesY];
+        mActive = new int[mTilesX * mTilesY];
+    }
+
+    public void markParticles(float[] xy, int count, double reach) {
+        // reach is in grid nodes and must cover the integrator's substep displacement plus the
+        // interpolation stencil
+        Arrays.fill(mMask, false);
+
+        int T = mTileSize;
+        for (int p = 0; p < count; p++) {
+            double gx = xy[p * 2] * mX;
+            double gy = xy[p * 2 + 1] * mY;
+
+            int tx0 = Math.max((int) Math.floor((gx - reach) / T), 0);
+            int tx1 = Math.min((int) Math.floor((gx + reach) / T), mTilesX - 1);
+            int ty0 = Math.max((int) Math.floor((gy - reach) / T), 0);
+            int ty1 = Math.min((int) Math.floor((gy + reach) / T), mTilesY - 1);
+
+            for (int tx = tx0; tx <= tx1; tx++) {
+                for (int ty = ty0; ty <= ty1; ty++) {
+                    mMask[tx * mTilesY + ty] = true;
+                }
+            }
+        }
+
+        mActiveCount = 0;
+        for (int t = 0; t < mMask.length; t++) {
+            if (mMask[t]) {
+                mActive[mActiveCount++] = t;
+            }
+        }
+    }
+
+    public int getActiveCount() {
+        return mActiveCount;
+    }
+
+    public int getActiveTile(int index) {
+        return mActive[index];
+    }
+
+    // Node ranges [start, end) covered by a tile
+
+    public int nodeStartX(int tile) {
+        return (tile / mTilesY) * mTileSize;
+    }
+
+    public int nodeEndX(int tile) {
+        return Math.min(nodeStartX(tile) + mTileSize, mX + 1);
+    }
+
+    public int nodeStartY(int tile) {
+        return (tile % mTilesY) * mTileSize;
+    }
+
+    public int nodeEndY(int tile) {
+        return Math.min(nodeStartY(tile) + mTileSize, mY + 1);
+    }
+
+    public final int mX;
+    public final int mY;
+    public final int mTileSize;
+    public final int mTilesX;
+    public final int mTilesY;
+
+    private final boolean[] mMask;
+    private final int[] mActive;
+    private int mActiveCount;
+}
@@ -0,0 +1,164 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+public class ForceProjector {
+
+    // Projects batches of force-path points onto the rectangle basis. For each batch the
+    // sin/cos of every wavenumber is generated from one sin/cos per point with the
+    // angle-addition recurrence, so the per-mode work is plain multiply-adds.
+
+    public ForceProjector(int[][] basisLookupTable, int N, int NSqrt, int capacity) {
+        mBasisLookupTable = basisLookupTable;
+        mN = N;
+        mNSqrt = NSqrt;
+        mCapacity = capacity;
+
+        mPX = new double[mCapacity];
+        mPY = new double[mCapacity];
+        mPFX = new double[mCapacity];
+        mPFY = new double[mCapacity];
+
+        int tableSize = (mNSqrt + 1) * mCapacity;
+        mSinXFx = new double[tableSize];
+        mCosXFy = new double[tableSize];
+        mSinY = new double[tableSize];
+        mCosY = new double[tableSize];
+    }
+
+    public void add(double x, double y, double fx, double fy, double dt, double[] dw) {
+        // Queue one path point, projecting the batch into dw when it fills up
+        if (x >= 1.00001 || x <= -0.00001 || y >= 1.00001 || y <= -0.00001)
+            return;
+
+        if (mCount == mCapacity) {
+            flush(dt, dw);
+        }
+
+        mPX[mCount] = x * Math.PI;
+        mPY[mCount] = y * Math.PI;
+        mPFX[mCount] = fx;
+        mPFY[mCount] = fy;
+        mCount++;
+    }
+
+    public void add(double[][] forcePath, double dt, double[] dw) {
+        // Matches EigenFluidSolver.projectForces(), which ignores the last point of the path
+        for (int j = 0; j < forcePath.length - 1; j++) {
+            add(forcePath[j][0], forcePath[j][1], forcePath[j][2], forcePath[j][3], dt, dw);
+        }
+    }
+
+    public void flush(double dt, double[] dw) {
+        int count = mCount;
+        if (count == 0)
+            return;
+
+        fillTables(count);
+
+        for (int i = 0; i < mN; i++) {
+            int a = mBasisLookupTable[i][0];
+            int b = mBasisLookupTable[i][1];
+
+            double sx = 0.0;
+            double sy = 0.0;
+
+            int ra = a * mCapacity;
+            int rb = b * mCapacity;
+            for (int p = 0; p < count; p++) {
+                sx += mSinXFx[ra + p] * mCosY[rb + p];
+                sy += mCosXFy[ra + p] * mSinY[rb + p];
+            }
+
+            // xFactor == yFactor == -1 / (a^2 + b^2) since both wavenumbers are nonzero
+            double factor = -1.0 / (a * a + b * b);
+
+            dw[i] += factor * dt * (-b * sx + a * sy);
+        }
+
+        mCount = 0;
+    }
+
+    private void fillTables(int count) {
+        int cap = mCapacity;
+
+        // k = 0 and k = 1 rows seed the recurrence
+        for (int p = 0; p < count; p++) {
+            double sx = Math.sin(mPX[p]);
+            double cx = Math.cos(mPX[p]);
+
+            mSinXFx[p] = 0.0;
+            mCosXFy[p] = mPFY[p];
+            mSinY[p] = 0.0;
+            mCosY[p] = 1.0;
+
+            mSinXFx[cap + p] = sx * mPFX[p];
+            mCosXFy[cap + p] = cx * mPFY[p];
+            mSinY[cap + p] = Math.sin(mPY[p]);
+            mCosY[cap + p] = Math.cos(mPY[p]);
+
+            // Scale by 2cos(x) once per point for the recurrence below
+            mPX[p] = 2.0 * cx;
+            mPY[p] = 2.0 * mCosY[cap + p];
+        }
+
+        // sin((k + 1)t) = 2cos(t)sin(kt) - sin((k - 1)t), and likewise for cos. The force
+        // weights are linear so the recurrence carries them through unchanged.
+        for (int k = 1; k < mNSqrt; k++) {
+            int r0 = (k - 1) * cap;
+            int r1 = k * cap;
+            int r2 = (k + 1) * cap;
+            for (int p = 0; p < count; p++) {
+                double tx = mPX[p];
+                double ty = mPY[p];
+                mSinXFx[r2 + p] = tx * mSinXFx[r1 + p] - mSinXFx[r0 + p];
+                mCosXFy[r2 + p] = tx * mCosXFy[r1 + p] - mCosXFy[r0 + p];
+                mSinY[r2 + p] = ty * mSinY[r1 + p] - mSinY[r0 + p];
+                mCosY[r2 + p] = ty * mCosY[r1 + p] - mCosY[r0 + p];
+            }
+        }
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    private final int[][] mBasisLookupTable;
+    private final int mN;
+    private final int mNSqrt;
+    private final int mCapacity;
+    private int mCount;
+
+    private final double[] mPX;
+    private final double[] mPY;
+    private final double[] mPFX;
+    private final double[] mPFY;
+
+    // Row k holds wavenumber k for every point in the batch
+    private final double[] mSinXFx;
+    private final double[] mCosXFy;
+    private final double[] mSinY;
+    private final double[] mCosY;
+}
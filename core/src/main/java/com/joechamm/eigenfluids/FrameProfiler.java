@@ -0,0 +1,143 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+public class FrameProfiler {
+
+    // Per-phase frame timings. The simulation thread brackets each phase with begin()/end(),
+    // which costs two nanoTime() calls and never allocates or locks; any thread may query the
+    // histograms and allocation counters while it runs.
+
+    public static final int PHASE_FRAME = 0;
+    public static final int PHASE_DRAW = 1;
+    public static final int PHASE_STEP = 2;
+    public static final int PHASE_ADVECT = 3;
+    public static final int PHASE_DYE = 4;
+    public static final int PHASE_UPLOAD = 5;
+    public static final int PHASE_COUNT = 6;
+
+    public static final String[] PHASE_NAMES = {"frame", "draw", "step", "advect", "dye", "upload"};
+
+    public FrameProfiler() {
+        this(null);
+    }
+
+    public FrameProfiler(LongSupplier allocationProbe) {
+        // allocationProbe returns a running count of bytes allocated; null disables allocation tracking
+        mAllocationProbe = allocationProbe;
+
+        mHistograms = new LatencyHistogram[PHASE_COUNT];
+        for (int p = 0; p < PHASE_COUNT; p++) {
+            mHistograms[p] = new LatencyHistogram();
+        }
+    }
+
+    public static LongSupplier heapUsedProbe() {
+        // Approximate, portable probe: growth of the used Java heap. A GC inside a phase makes the
+        // delta negative, which end() ignores.
+        Runtime runtime = Runtime.getRuntime();
+        return () -> runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public void begin(int phase) {
+        mStart[phase] = System.nanoTime();
+        if (mAllocationProbe != null) {
+            mAllocationStart[phase] = mAllocationProbe.getAsLong();
+        }
+    }
+
+    public void end(int phase) {
+        long elapsed = System.nanoTime() - mStart[phase];
+        mHistograms[phase].record(elapsed);
+        mLast[phase] = elapsed;
+
+        if (mAllocationProbe != null) {
+            long allocated = mAllocationProbe.getAsLong() - mAllocationStart[phase];
+            if (allocated > 0) {
+                mAllocatedBytes.lazySet(phase, mAllocatedBytes.get(phase) + allocated);
+            }
+        }
+    }
+
+    public LatencyHistogram getHistogram(int phase) {
+        return mHistograms[phase];
+    }
+
+    public long getPercentileNanos(int phase, double percentile) {
+        return mHistograms[phase].getValueAtPercentile(percentile);
+    }
+
+    public long getLastNanos(int phase) {
+        // Most recent sample; simulation thread only
+        return mLast[phase];
+    }
+
+    public long getMaxNanos(int phase) {
+        return mHistograms[phase].getMax();
+    }
+
+    public long getAllocatedBytes(int phase) {
+        return mAllocatedBytes.get(phase);
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (int p = 0; p < PHASE_COUNT; p++) {
+            LatencyHistogram h = mHistograms[p];
+            if (h.getCount() == 0) {
+                continue;
+            }
+
+            sb.append(String.format(Locale.US, "%-7s n=%d p50=%.3fms p99=%.3fms max=%.3fms",
+                    PHASE_NAMES[p], h.getCount(), h.getValueAtPercentile(50.0) * 1e-6,
+                    h.getValueAtPercentile(99.0) * 1e-6, h.getMax() * 1e-6));
+            if (mAllocationProbe != null) {
+                sb.append(String.format(Locale.US, " alloc=%.1fKB/frame",
+                        getAllocatedBytes(p) / 1024.0 / h.getCount()));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    public void reset() {
+        // Simulation thread only
+        for (int p = 0; p < PHASE_COUNT; p++) {
+            mHistograms[p].reset();
+            mAllocatedBytes.lazySet(p, 0);
+        }
+    }
+
+    private final LongSupplier mAllocationProbe;
+    private final LatencyHistogram[] mHistograms;
+    private final long[] mStart = new long[PHASE_COUNT];
+    private final long[] mLast = new long[PHASE_COUNT];
+    private final long[] mAllocationStart = new long[PHASE_COUNT];
+    private final AtomicLongArray mAllocatedBytes = new AtomicLongArray(PHASE_COUNT);
+}
@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+
+    // Log-linear histogram of non-negative long values (nanoseconds), HDR style: exact below 64,
+    // then 32 linear sub-buckets per power of two, so every recorded value is known to within
+    // about 3%. Storage is fixed at construction. There must be a single writer; any number of
+    // threads may read concurrently without locking.
+
+    public static final int SUB_BUCKETS = 32;
+    public static final int BUCKET_COUNT = 64 + 57 * SUB_BUCKETS;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        int index = indexOf(value);
+
+        // Single writer, so plain read-increment-publish is enough
+        mCounts.lazySet(index, mCounts.get(index) + 1);
+        mTotal.lazySet(mTotal.get() + 1);
+        mSum.lazySet(mSum.get() + value);
+        if (value > mMax.get()) {
+            mMax.lazySet(value);
+        }
+    }
+
+    public static int indexOf(long value) {
+        if (value < 64) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+        int sub = (int) (value >>> shift);
+        return 64 + (shift - 1) * SUB_BUCKETS + (sub - SUB_BUCKETS);
+    }
+
+    public static long valueOf(int index) {
+        // Midpoint of the bucket's value range
+        if (index < 64) {
+            return index;
+        }
+
+        int shift = (index - 64) / SUB_BUCKETS + 1;
+        long sub = (index - 64) % SUB_BUCKETS + SUB_BUCKETS;
+        return (sub << shift) + (1L << (shift - 1));
+    }
+
+    public long getValueAtPercentile(double percentile) {
+        long total = mTotal.get();
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = Math.max((long) Math.ceil(percentile / 100.0 * total), 1);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+            if (seen >= target) {
+                return Math.min(valueOf(i), mMax.get());
+            }
+        }
+
+        return mMax.get();
+    }
+
+    public long getCount() {
+        return mTotal.get();
+    }
+
+    public long getMax() {
+        return mMax.get();
+    }
+
+    public double getMean() {
+        long total = mTotal.get();
+        return total == 0 ? 0.0 : (double) mSum.get() / total;
+    }
+
+    public void reset() {
+        // Writer thread only
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.lazySet(i, 0);
+        }
+        mTotal.lazySet(0);
+        mSum.lazySet(0);
+        mMax.lazySet(0);
+    }
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+}
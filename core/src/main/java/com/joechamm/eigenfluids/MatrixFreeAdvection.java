@@ -0,0 +1,190 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.joechamm.eigenfluids;
+
+public class MatrixFreeAdvection {
+
+    // Evaluates the advection term dw_k = q . (C_k q) for every mode straight from the wavenumbers,
+    // without storing any structure coefficients. Each pair of modes (A, B) with wavenumbers a and b
+    // couples to the modes at (a1 -/+ b1, a2 -/+ b2), with weight coefficientDensity() times
+    // (1 / |b|^2 - 1 / |a|^2) once the mirrored entry is folded in. precomputeDynamics() visits both
+    // orders of every pair and the later write wins, which for i < j leaves all four antipairs of
+    // (A = j, B = i) and the three of (A = i, B = j) that do not land on (a1 + b1, a2 + b2); the
+    // sums below follow the same rule, so they agree with the stored matrices. Memory stays flat in N.
+
+    public MatrixFreeAdvection(int[][] lookup, int[][] reverseLookup, int NSqrt, double[] eigenvalues) {
+        mN = lookup.length;
+        mNSqrt = NSqrt;
+        mReverseLookup = reverseLookup;
+
+        mK1 = new int[mN];
+        mK2 = new int[mN];
+        mInverseEigenvalues = new double[mN];
+        for (int i = 0; i < mN; i++) {
+            mK1[i] = lookup[i][0];
+            mK2[i] = lookup[i][1];
+            mInverseEigenvalues[i] = 1.0 / eigenvalues[i];
+        }
+    }
+
+    public void evaluate(double[] q, double[] result) {
+        // result[k] = q . (C_k q) for all k. Modes with q == 0 (e.g. inactive ones) cost nothing.
+        for (int k = 0; k < mN; k++) {
+            result[k] = 0.0;
+        }
+
+        this.accumulateRows(q, result, 0, mN);
+    }
+
+    public void accumulateRows(double[] q, double[] result, int rowStart, int rowEnd) {
+        // Adds the couplings of the pairs (i, j > i) with i in [rowStart, rowEnd) to result
+        for (int i = rowStart; i < rowEnd; i++) {
+            double qi = q[i];
+            if (qi == 0.0) {
+                continue;
+            }
+
+            int i1 = mK1[i];
+            int i2 = mK2[i];
+            double invI = mInverseEigenvalues[i];
+
+            for (int j = i + 1; j < mN; j++) {
+                double qj = q[j];
+                if (qj == 0.0) {
+                    continue;
+                }
+
+                double w = qi * qj * (invI - mInverseEigenvalues[j]);
+                this.accumulate(mK1[j], mK2[j], i1, i2, w, 4, result);
+                this.accumulate(i1, i2, mK1[j], mK2[j], -w, 3, result);
+            }
+        }
+    }
+
+    private void accumulate(int a1, int a2, int b1, int b2, double w, int antipairs, double[] result) {
+        // Antipairs in precomputeDynamics() order: (-,-), (-,+), (+,-), (+,+)
+        double cross = 0.25 * w * (a1 * b2 - a2 * b1);
+        double dot = 0.25 * w * (a1 * b2 + a2 * b1);
+
+        int d1 = a1 - b1;
+        int s1 = a1 + b1;
+        int d2 = a2 - b2;
+        int s2 = a2 + b2;
+
+        if (d1 >= 1) {
+            if (d2 >= 1) {
+                result[mReverseLookup[d1][d2]] -= cross;
+            }
+            if (s2 <= mNSqrt) {
+                result[mReverseLookup[d1][s2]] += dot;
+            }
+        }
+        if (s1 <= mNSqrt) {
+            if (d2 >= 1) {
+                result[mReverseLookup[s1][d2]] -= dot;
+            }
+            if (antipairs == 4 && s2 <= mNSqrt) {
+                result[mReverseLookup[s1][s2]] += cross;
+            }
+        }
+    }
+
+    int couplings(int i, int j, int[] modes, double[] densities) {
+        // The couplings of the pair (i, j > i) as accumulateRows() applies them: dw_modes[c] gains
+        // q_i q_j (1 / |i|^2 - 1 / |j|^2) densities[c]. Returns the count, at most seven.
+        int count = this.couplings(mK1[j], mK2[j], mK1[i], mK2[i], 1.0, 4, modes, densities, 0);
+        return this.couplings(mK1[i], mK2[i], mK1[j], mK2[j], -1.0, 3, modes, densities, count);
+    }
+
+    private int couplings(int a1, int a2, int b1, int b2, double w, int antipairs, int[] modes, double[] densities, int count) {
+        // Same antipairs and signs as accumulate()
+        double cross = 0.25 * w * (a1 * b2 - a2 * b1);
+        double dot = 0.25 * w * (a1 * b2 + a2 * b1);
+
+        int d1 = a1 - b1;
+        int s1 = a1 + b1;
+        int d2 = a2 - b2;
+        int s2 = a2 + b2;
+
+        if (d1 >= 1) {
+            if (d2 >= 1) {
+                modes[count] = mReverseLookup[d1][d2];
+                densities[count++] = -cross;
+            }
+            if (s2 <= mNSqrt) {
+                modes[count] = mReverseLookup[d1][s2];
+                densities[count++] = dot;
+            }
+        }
+        if (s1 <= mNSqrt) {
+            if (d2 >= 1) {
+                modes[count] = mReverseLookup[s1][d2];
+                densities[count++] = -dot;
+            }
+            if (antipairs == 4 && s2 <= mNSqrt) {
+                modes[count] = mReverseLookup[s1][s2];
+                densities[count++] = cross;
+            }
+        }
+
+        return count;
+    }
+
+    public long getTriadCount() {
+        // Number of (mode pair, antipair) couplings, which equals the stored pair count of PackedStructureCoefficients
+        long count = 0;
+        for (int i = 0; i < mN; i++) {
+            count += this.getTriadCount(i);
+        }
+        return count;
+    }
+
+    public int getTriadCount(int row) {
+        // Couplings visited by accumulateRows() for this row
+        int count = 0;
+        for (int j = row + 1; j < mN; j++) {
+            count += this.countAntipairs(mK1[j], mK2[j], mK1[row], mK2[row], 4);
+            count += this.countAntipairs(mK1[row], mK2[row], mK1[j], mK2[j], 3);
+        }
+        return count;
+    }
+
+    private int countAntipairs(int a1, int a2, int b1, int b2, int antipairs) {
+        boolean d1 = a1 - b1 >= 1;
+        boolean s1 = a1 + b1 <= mNSqrt;
+        boolean d2 = a2 - b2 >= 1;
+        boolean s2 = a2 + b2 <= mNSqrt;
+
+        return (d1 && d2 ? 1 : 0) + (d1 && s2 ? 1 : 0) + (s1 && d2 ? 1 : 0)
+                + (antipairs == 4 && s1 && s2 ? 1 : 0);
+    }
+
+    public final int mN;
+
+    private final int mNSqrt;
+    private final int[][] mReverseLookup;
+    private final int[] mK1;
+    private final int[] mK2;
+    private final double[] mInverseEigenvalues;
+}
@@ -0,0 +1,198 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.joechamm.eigenfluids;
+
+import java.util.Arrays;
+
+public class PackedStructureCoefficients {
+
+    // Structure coefficients with each unordered pair stored once. For i < j, the structure
+    // matrices satisfy C_k(row j, col i) = -C_k(row i, col j) * lambda_i / lambda_j, so only the
+    // upper entry is kept and the partner is rebuilt from the eigenvalues. A pair contributes
+    // q_i q_j v (1 - lambda_i / lambda_j) to q . (C_k q), which the kernel evaluates per row as
+    // q_i (sum v q_j - lambda_i sum v q_j / lambda_j). Pairs are grouped by mode, then by row:
+    // one int and one double per pair, half of what the SparseMatrix form holds.
+
+    public PackedStructureCoefficients(MatrixFreeAdvection triads, double[] eigenvalues) {
+        // Built straight from the matrix-free couplings, so the SparseMatrix form never exists.
+        // Matching the two contributions above gives v = density / lambda_i.
+        mN = triads.mN;
+        mEigenvalues = eigenvalues;
+        mInverseEigenvalues = new double[mN];
+        for (int i = 0; i < mN; i++) {
+            mInverseEigenvalues[i] = 1.0 / eigenvalues[i];
+        }
+
+        int[] modes = new int[7];
+        double[] densities = new double[7];
+        int[] pairCounts = new int[mN];
+        int[] rowCounts = new int[mN];
+        int[] lastRow = new int[mN];
+
+        // Count pairs and non-empty rows per mode first, so everything fits in flat arrays
+        Arrays.fill(lastRow, -1);
+        for (int i = 0; i < mN; i++) {
+            for (int j = i + 1; j < mN; j++) {
+                int count = triads.couplings(i, j, modes, densities);
+                for (int c = 0; c < count; c++) {
+                    int k = modes[c];
+                    pairCounts[k]++;
+                    if (lastRow[k] != i) {
+                        lastRow[k] = i;
+                        rowCounts[k]++;
+                    }
+                }
+            }
+        }
+
+        // Rows are visited in order, so each mode's pairs arrive already grouped by row
+        int[] rowCursor = new int[mN];
+        int[] pairCursor = new int[mN];
+        int rowCount = 0;
+        int pairCount = 0;
+        mModeStart = new int[mN + 1];
+        for (int k = 0; k < mN; k++) {
+            mModeStart[k] = rowCount;
+            rowCursor[k] = rowCount;
+            pairCursor[k] = pairCount;
+            rowCount += rowCounts[k];
+            pairCount += pairCounts[k];
+        }
+        mModeStart[mN] = rowCount;
+
+        mRows = new int[rowCount];
+        mRowStart = new int[rowCount + 1];
+        mColumns = new int[pairCount];
+        mValues = new double[pairCount];
+
+        Arrays.fill(lastRow, -1);
+        for (int i = 0; i < mN; i++) {
+            for (int j = i + 1; j < mN; j++) {
+                int count = triads.couplings(i, j, modes, densities);
+                for (int c = 0; c < count; c++) {
+                    int k = modes[c];
+                    if (lastRow[k] != i) {
+                        lastRow[k] = i;
+                        int r = rowCursor[k]++;
+                        mRows[r] = i;
+                        mRowStart[r] = pairCursor[k];
+                    }
+                    int p = pairCursor[k]++;
+                    mColumns[p] = j;
+                    mValues[p] = densities[c] * mInverseEigenvalues[i];
+                }
+            }
+        }
+        mRowStart[rowCount] = pairCount;
+    }
+
+    public void scale(double[] q, double[] qScaled) {
+        // qScaled = q / lambda, shared by every mode's quadraticForm() for the same q
+        for (int i = 0; i < mN; i++) {
+            qScaled[i] = q[i] * mInverseEigenvalues[i];
+        }
+    }
+
+    public double quadraticForm(int k, double[] q, double[] qScaled) {
+        // q . (C_k q), with qScaled from scale(q)
+        double result = 0.0;
+        for (int r = mModeStart[k]; r < mModeStart[k + 1]; r++) {
+            double s = 0.0;
+            double sScaled = 0.0;
+            for (int p = mRowStart[r]; p < mRowStart[r + 1]; p++) {
+                double v = mValues[p];
+                int col = mColumns[p];
+                s += v * q[col];
+                sScaled += v * qScaled[col];
+            }
+            int row = mRows[r];
+            result += q[row] * (s - mEigenvalues[row] * sScaled);
+        }
+        return result;
+    }
+
+    public int getPairCount() {
+        return mValues.length;
+    }
+
+    public int getPairCount(int k) {
+        return mRowStart[mModeStart[k + 1]] - mRowStart[mModeStart[k]];
+    }
+
+    public void scaleBlock(double[] block, int width, double[] blockScaled) {
+        // scale() for width interleaved vectors (element i of q_m at i * width + m)
+        for (int i = 0; i < mN; i++) {
+            double inverse = mInverseEigenvalues[i];
+            int base = i * width;
+            for (int m = 0; m < width; m++) {
+                blockScaled[base + m] = block[base + m] * inverse;
+            }
+        }
+    }
+
+    public void quadraticFormBlock(int k, double[] block, double[] blockScaled, int width, double[] scratch, double[] result, int offset) {
+        // quadraticForm() for width interleaved vectors, with blockScaled from scaleBlock() and
+        // 2 * width of scratch; result[offset + m] = q_m . (C_k q_m). Each pair is loaded once
+        // and applied across all vectors.
+        for (int m = 0; m < width; m++) {
+            result[offset + m] = 0.0;
+        }
+
+        for (int r = mModeStart[k]; r < mModeStart[k + 1]; r++) {
+            for (int m = 0; m < 2 * width; m++) {
+                scratch[m] = 0.0;
+            }
+
+            for (int p = mRowStart[r]; p < mRowStart[r + 1]; p++) {
+                double v = mValues[p];
+                int base = mColumns[p] * width;
+                for (int m = 0; m < width; m++) {
+                    scratch[m] += v * block[base + m];
+                    scratch[width + m] += v * blockScaled[base + m];
+                }
+            }
+
+            int row = mRows[r];
+            double lambda = mEigenvalues[row];
+            int base = row * width;
+            for (int m = 0; m < width; m++) {
+                result[offset + m] += block[base + m] * (scratch[m] - lambda * scratch[width + m]);
+            }
+        }
+    }
+
+    public long getMemoryBytes() {
+        return 12L * mValues.length + 8L * mRows.length + 4L * mModeStart.length;
+    }
+
+    public final int mN;
+
+    private final double[] mEigenvalues;
+    private final double[] mInverseEigenvalues;
+    private final int[] mModeStart;
+    private final int[] mRows;
+    private final int[] mRowStart;
+    private final int[] mColumns;
+    private final double[] mValues;
+}
@@ -0,0 +1,156 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+public class PaddedVelocityGrid {
+
+    // Flat copy of the staggered velocity grid surrounded by a one-node ghost ring, so samplers
+    // can read any stencil of a clamped sample position without per-node bounds checks.
+
+    public PaddedVelocityGrid(int x, int y) {
+        mX = x;
+        mY = y;
+        mStride = mY + 3;
+
+        mU = new double[(mX + 3) * mStride];
+        mV = new double[(mX + 3) * mStride];
+    }
+
+    public void fill(double[][][] field) {
+        for (int i = 0; i < mX + 1; i++) {
+            System.arraycopy(field[0][i], 0, mU, (i + 1) * mStride + 1, mY + 1);
+            System.arraycopy(field[1][i], 0, mV, (i + 1) * mStride + 1, mY + 1);
+        }
+
+        fillGhosts(mU);
+        fillGhosts(mV);
+    }
+
+    public void fill(double[][][] field, ExpansionTiles tiles) {
+        // Copy only the node ranges of the active tiles, for a field expanded by tile
+        for (int t = 0; t < tiles.getActiveCount(); t++) {
+            int tile = tiles.getActiveTile(t);
+            int j0 = tiles.nodeStartY(tile);
+            int length = tiles.nodeEndY(tile) - j0;
+
+            for (int i = tiles.nodeStartX(tile); i < tiles.nodeEndX(tile); i++) {
+                System.arraycopy(field[0][i], j0, mU, (i + 1) * mStride + j0 + 1, length);
+                System.arraycopy(field[1][i], j0, mV, (i + 1) * mStride + j0 + 1, length);
+            }
+        }
+
+        fillGhosts(mU);
+        fillGhosts(mV);
+    }
+
+    public void fillGhosts(double[] f) {
+        // Replicate the edge nodes into the ghost ring (clamp-to-edge)
+        for (int i = 1; i < mX + 2; i++) {
+            int row = i * mStride;
+            f[row] = f[row + 1];
+            f[row + mY + 2] = f[row + mY + 1];
+        }
+
+        System.arraycopy(f, mStride, f, 0, mStride);
+        System.arraycopy(f, (mX + 1) * mStride, f, (mX + 2) * mStride, mStride);
+    }
+
+    public int index(int i, int j) {
+        return (i + 1) * mStride + (j + 1);
+    }
+
+    public void sampleBilinear(double xx, double yy, double[] out) {
+        // Same staggering as EigenFluidSolver.bilinearVelocity(): u lives half a cell up, v half a cell right
+        xx *= mX;
+        yy *= mY;
+
+        out[0] = bilinear(mU, xx, yy - 0.5);
+        out[1] = bilinear(mV, xx - 0.5, yy);
+    }
+
+    public void sampleCubic(double xx, double yy, double[] out) {
+        xx *= mX;
+        yy *= mY;
+
+        out[0] = catmullRom(mU, xx, yy - 0.5);
+        out[1] = catmullRom(mV, xx - 0.5, yy);
+    }
+
+    public double bilinear(double[] f, double gx, double gy) {
+        gx = Math.min(Math.max(gx, 0.0), mX);
+        gy = Math.min(Math.max(gy, 0.0), mY);
+
+        // i == mX only when gx == mX, where the ghost node gets zero weight
+        int i = (int) gx;
+        int j = (int) gy;
+        double tx = gx - i;
+        double ty = gy - j;
+
+        int n = (i + 1) * mStride + (j + 1);
+
+        double f0 = f[n] + ty * (f[n + 1] - f[n]);
+        double f1 = f[n + mStride] + ty * (f[n + mStride + 1] - f[n + mStride]);
+
+        return f0 + tx * (f1 - f0);
+    }
+
+    public double catmullRom(double[] f, double gx, double gy) {
+        gx = Math.min(Math.max(gx, 0.0), mX);
+        gy = Math.min(Math.max(gy, 0.0), mY);
+
+        // Keep the four-node stencil inside the ghost ring by using the last cell at the far edge
+        int i = Math.min((int) gx, mX - 1);
+        int j = Math.min((int) gy, mY - 1);
+        double tx = gx - i;
+        double ty = gy - j;
+
+        double wy0 = ty * (-0.5 + ty * (1.0 - 0.5 * ty));
+        double wy1 = 1.0 + ty * ty * (-2.5 + 1.5 * ty);
+        double wy2 = ty * (0.5 + ty * (2.0 - 1.5 * ty));
+        double wy3 = ty * ty * (-0.5 + 0.5 * ty);
+
+        // Stencil origin is node (i - 1, j - 1)
+        int n = i * mStride + j;
+
+        double c0 = wy0 * f[n] + wy1 * f[n + 1] + wy2 * f[n + 2] + wy3 * f[n + 3];
+        n += mStride;
+        double c1 = wy0 * f[n] + wy1 * f[n + 1] + wy2 * f[n + 2] + wy3 * f[n + 3];
+        n += mStride;
+        double c2 = wy0 * f[n] + wy1 * f[n + 1] + wy2 * f[n + 2] + wy3 * f[n + 3];
+        n += mStride;
+        double c3 = wy0 * f[n] + wy1 * f[n + 1] + wy2 * f[n + 2] + wy3 * f[n + 3];
+
+        return c0 * (tx * (-0.5 + tx * (1.0 - 0.5 * tx)))
+                + c1 * (1.0 + tx * tx * (-2.5 + 1.5 * tx))
+                + c2 * (tx * (0.5 + tx * (2.0 - 1.5 * tx)))
+                + c3 * (tx * tx * (-0.5 + 0.5 * tx));
+    }
+
+    public final int mX;
+    public final int mY;
+    public final int mStride;
+    public final double[] mU;
+    public final double[] mV;
+}
@@ -0,0 +1,156 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.joechamm.eigenfluids;
+
+public class ParallelAdvection implements WorkerPool.Task {
+
+    // Evaluates the advection term of one RK4 stage across a WorkerPool. The stored path splits
+    // the active modes into contiguous ranges of about equal stored pair count, and each mode is
+    // still summed by a single thread in the serial order, so results are bit-identical. The
+    // matrix-free path splits rows of mode pairs by coupling count; every chunk accumulates into
+    // its own scratch vector, which are reduced in chunk order so results do not depend on which
+    // thread ran what. The pool's workers spin between stages, so the four stages of a step reuse
+    // the same hot threads.
+
+    public static final int CHUNKS_PER_WORKER = 4;
+
+    public ParallelAdvection(PackedStructureCoefficients packedCk, MatrixFreeAdvection matrixFree, WorkerPool pool) {
+        mPackedCk = packedCk;
+        mMatrixFree = matrixFree;
+        mPool = pool;
+        mN = matrixFree.mN;
+
+        mChunks = Math.max(1, Math.min(mN, pool.getWorkerCount() * CHUNKS_PER_WORKER));
+        mModeStart = new int[mChunks + 1];
+        mRowStart = new int[mChunks + 1];
+        mChunkResults = new double[mChunks][mN];
+        mScaled = new double[mN];
+
+        // Matrix-free rows only depend on N, so they are balanced once
+        long[] weights = new long[mN];
+        for (int i = 0; i < mN; i++) {
+            weights[i] = matrixFree.getTriadCount(i) + 1;
+        }
+        balance(weights, mN, mRowStart);
+    }
+
+    public void partition(int[] activeModes, int activeCount) {
+        // Balance the stored path over the active modes; call whenever the active set changes
+        mActiveModes = activeModes;
+        mActiveCount = activeCount;
+
+        if (mPackedCk == null) {
+            return;
+        }
+
+        long[] weights = new long[activeCount];
+        for (int a = 0; a < activeCount; a++) {
+            weights[a] = mPackedCk.getPairCount(activeModes[a]) + 1;
+        }
+        balance(weights, activeCount, mModeStart);
+    }
+
+    private void balance(long[] weights, int count, int[] starts) {
+        // Contiguous ranges whose weight sums are as close to total / chunks as the items allow
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += weights[i];
+        }
+
+        int item = 0;
+        long running = 0;
+        starts[0] = 0;
+        for (int c = 1; c < mChunks; c++) {
+            long target = total * c / mChunks;
+            while (item < count && running + weights[item] / 2 < target) {
+                running += weights[item];
+                item++;
+            }
+            starts[c] = item;
+        }
+        starts[mChunks] = count;
+    }
+
+    public void evaluate(double[] q, double[] dwt, boolean matrixFree) {
+        // dwt[k] = q . (C_k q) for the active modes (all modes on the matrix-free path)
+        mQ = q;
+        mDwt = dwt;
+        mMatrixFreeStage = matrixFree;
+
+        if (!matrixFree) {
+            mPackedCk.scale(q, mScaled);
+        }
+
+        mPool.run(this, mChunks);
+
+        if (matrixFree) {
+            for (int k = 0; k < mN; k++) {
+                double sum = 0.0;
+                for (int c = 0; c < mChunks; c++) {
+                    sum += mChunkResults[c][k];
+                }
+                dwt[k] = sum;
+            }
+        }
+
+        mQ = null;
+        mDwt = null;
+    }
+
+    @Override
+    public void run(int chunk, int worker) {
+        double[] q = mQ;
+
+        if (mMatrixFreeStage) {
+            double[] result = mChunkResults[chunk];
+            for (int k = 0; k < mN; k++) {
+                result[k] = 0.0;
+            }
+            mMatrixFree.accumulateRows(q, result, mRowStart[chunk], mRowStart[chunk + 1]);
+            return;
+        }
+
+        double[] dwt = mDwt;
+        int[] active = mActiveModes;
+        for (int a = mModeStart[chunk]; a < mModeStart[chunk + 1]; a++) {
+            int k = active[a];
+            dwt[k] = mPackedCk.quadraticForm(k, q, mScaled);
+        }
+    }
+
+    private final PackedStructureCoefficients mPackedCk;
+    private final MatrixFreeAdvection mMatrixFree;
+    private final WorkerPool mPool;
+    private final int mN;
+    private final int mChunks;
+    private final int[] mModeStart;
+    private final int[] mRowStart;
+    private final double[][] mChunkResults;
+    private final double[] mScaled;
+    private int[] mActiveModes;
+    private int mActiveCount;
+    private double[] mQ;
+    private double[] mDwt;
+    private boolean mMatrixFreeStage;
+}
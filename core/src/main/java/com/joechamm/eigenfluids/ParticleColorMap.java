@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.joechamm.eigenfluids;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class ParticleColorMap {
+
+    // Speed-to-color lookup for particle rendering. Entries are indexed by squared speed, spaced so
+    // that entry i holds the color of speed sqrt(i / (SIZE - 1)) * maxSpeed, which spares the
+    // advection loop a square root. Colors are packed as ints whose native-order bytes read R, G, B, A,
+    // ready to be stored into a native-order buffer handed to glColorPointer().
+
+    public static final int SIZE = 1024;
+
+    public ParticleColorMap(int[] stops, double maxSpeed) {
+        // stops are 0xRRGGBBAA colors, evenly spaced from rest to maxSpeed
+        mScale = (SIZE - 1) / (maxSpeed * maxSpeed);
+        mTable = new int[SIZE];
+
+        ByteBuffer pack = ByteBuffer.allocate(4);
+        pack.order(ByteOrder.nativeOrder());
+
+        for (int i = 0; i < SIZE; i++) {
+            double t = Math.sqrt((double) i / (SIZE - 1)) * (stops.length - 1);
+            int s = Math.min((int) t, stops.length - 2);
+            double f = t - s;
+
+            for (int c = 0; c < 4; c++) {
+                int shift = 24 - 8 * c;
+                int a = (stops[s] >>> shift) & 0xff;
+                int b = (stops[s + 1] >>> shift) & 0xff;
+                pack.put(c, (byte) Math.round(a + (b - a) * f));
+            }
+            mTable[i] = pack.getInt(0);
+        }
+    }
+
+    public static ParticleColorMap heat(double maxSpeed) {
+        // Deep blue at rest through cyan and yellow to red
+        return new ParticleColorMap(new int[] {0x1030a0ff, 0x20c0e0ff, 0xf0e040ff, 0xff2010ff}, maxSpeed);
+    }
+
+    public int lookup(double speedSquared) {
+        int index = (int) (speedSquared * mScale);
+        return mTable[index < SIZE ? index : SIZE - 1];
+    }
+
+    private final double mScale;
+    private final int[] mTable;
+}
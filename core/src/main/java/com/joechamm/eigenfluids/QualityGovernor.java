@@ -0,0 +1,236 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.joechamm.eigenfluids;
+
+import java.util.ArrayList;
+
+public class QualityGovernor {
+
+    // Holds a frame-time budget by walking the solver up and down a quality ladder.
+    // Level 0 is full quality; each following level is cheaper than the one before: cubic
+    // advection goes first, then particles and modes are cut alternately by a quarter down to
+    // their minimums, and finally the velocity grid steps down through gridLevels. The
+    // governor degrades when the mean frame time over a short window crosses the high
+    // watermark and upgrades only after a longer window below the low watermark, with a
+    // cooldown after every change so one level's cost is measured before the next move.
+
+    public static final double DEGRADE_WATERMARK = 0.95;
+    public static final double UPGRADE_WATERMARK = 0.6;
+    public static final int DEGRADE_WINDOW = 30;
+    public static final int UPGRADE_WINDOW = 120;
+    public static final int COOLDOWN_FRAMES = 60;
+
+    public QualityGovernor(EigenFluidSolver solver, long targetFrameNanos,
+                           int minModes, int minParticles, int[] gridLevels, boolean allowCubic) {
+        // gridLevels in increasing order; the solver's capacity (mN, mNumParticles) is the top of the ladder
+        mSolver = solver;
+        mTargetFrameNanos = targetFrameNanos;
+        mGridLevels = gridLevels.clone();
+        mPinned = new BasisBundle[mGridLevels.length];
+
+        int maxModes = solver.mN;
+        int maxParticles = solver.mNumParticles;
+        minModes = Math.max(1, Math.min(minModes, maxModes));
+        minParticles = Math.max(0, Math.min(minParticles, maxParticles));
+
+        ArrayList<int[]> ladder = new ArrayList<int[]>();
+        int grid = mGridLevels.length - 1;
+        int modes = maxModes;
+        int particles = maxParticles;
+        boolean cubic = allowCubic;
+
+        ladder.add(level(cubic, particles, modes, grid));
+        if (cubic) {
+            cubic = false;
+            ladder.add(level(cubic, particles, modes, grid));
+        }
+
+        boolean cutParticles = true;
+        while (particles > minParticles || modes > minModes) {
+            if ((cutParticles && particles > minParticles) || modes == minModes) {
+                particles = Math.max(minParticles, particles * 3 / 4);
+            } else {
+                modes = Math.max(minModes, modes * 3 / 4);
+            }
+            cutParticles = !cutParticles;
+            ladder.add(level(cubic, particles, modes, grid));
+        }
+
+        while (grid > 0) {
+            grid--;
+            ladder.add(level(cubic, particles, modes, grid));
+        }
+
+        mLadder = ladder.toArray(new int[ladder.size()][]);
+        mLevel = -1;
+    }
+
+    private static int[] level(boolean cubic, int particles, int modes, int grid) {
+        return new int[] {cubic ? 1 : 0, particles, modes, grid};
+    }
+
+    public int getLevelCount() {
+        return mLadder.length;
+    }
+
+    public int getLevel() {
+        return mLevel;
+    }
+
+    public int findLevel(int gridResolution, int modes, int particles) {
+        // The best level that does not exceed the given configuration
+        for (int l = 0; l < mLadder.length; l++) {
+            int[] q = mLadder[l];
+            if (mGridLevels[q[3]] <= gridResolution && q[2] <= modes && q[1] <= particles) {
+                return l;
+            }
+        }
+        return mLadder.length - 1;
+    }
+
+    public String describeLevel(int level) {
+        int[] q = mLadder[level];
+        return "grid=" + mGridLevels[q[3]] + " modes=" + q[2] + " particles=" + q[1] + " cubic=" + (q[0] != 0);
+    }
+
+    public void setLevel(int level) {
+        // Apply a ladder level. Call between frames, never during advance().
+        level = Math.max(0, Math.min(level, mLadder.length - 1));
+        int[] q = mLadder[level];
+
+        int g = q[3];
+        if (mPinned[g] == null) {
+            // Keep every grid we have visited resident, so moving back to it is only an expansion
+            mPinned[g] = BasisRegistry.acquire(mGridLevels[g], mSolver.mN);
+        }
+
+        mSolver.setCubicAdvection(q[0] != 0);
+        mSolver.setActiveParticles(q[1]);
+
+        if (q[2] != mSolver.getActiveModes()) {
+            // Dropping modes would remove energy; keep the flow as strong as it was
+            double energy = mSolver.currentEnergy();
+            mSolver.setActiveModes(q[2]);
+            double truncated = mSolver.currentEnergy();
+            if (energy > 1e-5 && truncated > 1e-5) {
+                mSolver.setEnergy(energy);
+            }
+            // The cheaper advection evaluator depends on how many modes are active
+            mSolver.chooseAdvectionMode();
+        }
+
+        mSolver.setGridResolution(mGridLevels[g]);
+
+        mLevel = level;
+        mCooldown = COOLDOWN_FRAMES;
+        resetWindows();
+    }
+
+    public void adoptLevel() {
+        // Take over the level the solver is already at, e.g. after a snapshot restore, without
+        // touching its state. Falls back to setLevel() if the configuration is not on the ladder.
+        int cubic = mSolver.mCubicAdvection ? 1 : 0;
+        for (int l = 0; l < mLadder.length; l++) {
+            int[] q = mLadder[l];
+            if (q[0] == cubic && q[1] == mSolver.getActiveParticles() && q[2] == mSolver.getActiveModes()
+                    && mGridLevels[q[3]] == mSolver.mX) {
+                if (mPinned[q[3]] == null) {
+                    mPinned[q[3]] = BasisRegistry.acquire(mGridLevels[q[3]], mSolver.mN);
+                }
+
+                mLevel = l;
+                mCooldown = COOLDOWN_FRAMES;
+                resetWindows();
+                return;
+            }
+        }
+
+        setLevel(findLevel(mSolver.mX, mSolver.getActiveModes(), mSolver.getActiveParticles()));
+    }
+
+    public boolean onFrame(long frameNanos) {
+        // Feed one frame's measured time; returns true if the quality level changed
+        if (mCooldown > 0) {
+            mCooldown--;
+            return false;
+        }
+
+        mShortSum += frameNanos;
+        mShortCount++;
+        mLongSum += frameNanos;
+        mLongCount++;
+
+        if (mShortCount == DEGRADE_WINDOW) {
+            double mean = (double) mShortSum / mShortCount;
+            mShortSum = 0;
+            mShortCount = 0;
+
+            if (mean > DEGRADE_WATERMARK * mTargetFrameNanos && mLevel < mLadder.length - 1) {
+                setLevel(mLevel + 1);
+                return true;
+            }
+        }
+
+        if (mLongCount == UPGRADE_WINDOW) {
+            double mean = (double) mLongSum / mLongCount;
+            mLongSum = 0;
+            mLongCount = 0;
+
+            if (mean < UPGRADE_WATERMARK * mTargetFrameNanos && mLevel > 0) {
+                setLevel(mLevel - 1);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void resetWindows() {
+        mShortSum = 0;
+        mShortCount = 0;
+        mLongSum = 0;
+        mLongCount = 0;
+    }
+
+    public void release() {
+        for (int g = 0; g < mPinned.length; g++) {
+            if (mPinned[g] != null) {
+                BasisRegistry.release(mPinned[g]);
+                mPinned[g] = null;
+            }
+        }
+    }
+
+    private final EigenFluidSolver mSolver;
+    private final long mTargetFrameNanos;
+    private final int[] mGridLevels;
+    private final int[][] mLadder;
+    private final BasisBundle[] mPinned;
+    private int mLevel;
+    private int mCooldown;
+    private long mShortSum;
+    private int mShortCount;
+    private long mLongSum;
+    private int mLongCount;
+}
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class SolverSnapshot {
+
+    // Compact binary snapshot of a solver's mutable state: parameters, active mode and particle
+    // counts, advection evaluator, coefficients, pending forces and particle positions. Arrays are copied with bulk buffer transfers, and doubles are
+    // stored unconverted so a restore is bit-exact.
+
+    public static final int MAGIC = 0x45465353; // "EFSS"
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 88;
+
+    public static byte[] capture(EigenFluidSolver solver) {
+        int N = solver.mN;
+        int P = solver.mNumParticles;
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 16 * N + 8 * P);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(N);
+        buffer.putInt(solver.mX);
+        buffer.putInt(solver.mY);
+        buffer.putInt(P);
+        buffer.putInt(solver.mCubicAdvection ? 1 : 0);
+        buffer.putInt(solver.getActiveModes());
+        buffer.putLong(solver.mParticleSeed);
+        buffer.putDouble(solver.mDt);
+        buffer.putDouble(solver.mPDTMult);
+        buffer.putDouble(solver.mViscosity);
+        buffer.putDouble(solver.mMargin);
+        buffer.putDouble(solver.mTouchForce);
+        buffer.putInt(solver.getActiveParticles());
+        buffer.putInt(solver.mMatrixFreeAdvection ? 1 : 0);
+
+        buffer.asDoubleBuffer().put(solver.mCoefficients).put(solver.mForcesDW);
+        buffer.position(buffer.position() + 16 * N);
+        buffer.asFloatBuffer().put(solver.mParticlesXY, 0, 2 * P);
+
+        return buffer.array();
+    }
+
+    public static EigenFluidSolver create(byte[] snapshot) {
+        // Builds a solver matching the snapshot's configuration, reusing cached precomputation when possible
+        ByteBuffer buffer = header(snapshot);
+        int N = buffer.getInt(8);
+        int X = buffer.getInt(12);
+        int P = buffer.getInt(20);
+        long seed = buffer.getLong(32);
+
+        EigenFluidSolver solver = new EigenFluidSolver(X, N, P, seed);
+        restore(solver, snapshot);
+        return solver;
+    }
+
+    public static void restore(EigenFluidSolver solver, byte[] snapshot) {
+        ByteBuffer buffer = header(snapshot);
+
+        int N = buffer.getInt();
+        int X = buffer.getInt();
+        int Y = buffer.getInt();
+        int P = buffer.getInt();
+
+        if (N != solver.mN || X != solver.mX || Y != solver.mY || P != solver.mNumParticles) {
+            throw new IllegalArgumentException("Snapshot is for N=" + N + ", grid " + X + "x" + Y + ", "
+                    + P + " particles");
+        }
+
+        solver.setCubicAdvection(buffer.getInt() != 0);
+        // Masking first; the inactive coefficients read below are already zero
+        solver.setActiveModes(buffer.getInt());
+        buffer.getLong();
+        solver.mDt = buffer.getDouble();
+        solver.mPDTMult = buffer.getDouble();
+        solver.mViscosity = buffer.getDouble();
+        solver.mMargin = buffer.getDouble();
+        solver.mTouchForce = buffer.getDouble();
+        solver.setActiveParticles(buffer.getInt());
+        // The evaluators differ in summation order, so the restored solver must use the same one
+        solver.setMatrixFreeAdvection(buffer.getInt() != 0);
+
+        buffer.asDoubleBuffer().get(solver.mCoefficients).get(solver.mForcesDW);
+        buffer.position(buffer.position() + 16 * N);
+        buffer.asFloatBuffer().get(solver.mParticlesXY, 0, 2 * P);
+
+        // The velocity field is derived state
+        solver.expandBasis();
+    }
+
+    private static ByteBuffer header(byte[] snapshot) {
+        ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (snapshot.length < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IllegalArgumentException("Not a solver snapshot");
+        }
+
+        return buffer;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import java.util.Arrays;
+
+public class SpectralDiagnostics {
+
+    // Evaluates derived fields straight from the basis coefficients on the solver's grid nodes.
+    // For the rectangle basis with wavenumbers (a, b) each mode contributes
+    //   vorticity        sin(ax) sin(by)
+    //   stream function  sin(ax) sin(by) / (a^2 + b^2)
+    //   velocity         (b sin(ax) cos(by), -a cos(ax) sin(by)) / (a^2 + b^2)
+    // so every field is a separable sum, evaluated as two small dense products over 1-D tables.
+    // The tables follow the solver's grid, including changes through setGridResolution().
+
+    public SpectralDiagnostics(EigenFluidSolver solver) {
+        mSolver = solver;
+
+        int K = solver.mNSqrt + 1;
+        mWeights = new double[K][K];
+        this.buildTables();
+    }
+
+    private void buildTables() {
+        int K = mWeights.length;
+        mX = mSolver.mX;
+        mY = mSolver.mY;
+
+        mSinX = new double[K][mX + 1];
+        mCosX = new double[K][mX + 1];
+        mSinY = new double[K][mY + 1];
+        mCosY = new double[K][mY + 1];
+
+        double dx = Math.PI / mX;
+        double dy = Math.PI / mY;
+        for (int k = 0; k < K; k++) {
+            for (int i = 0; i < mX + 1; i++) {
+                mSinX[k][i] = Math.sin(k * i * dx);
+                mCosX[k][i] = Math.cos(k * i * dx);
+            }
+            for (int j = 0; j < mY + 1; j++) {
+                mSinY[k][j] = Math.sin(k * j * dy);
+                mCosY[k][j] = Math.cos(k * j * dy);
+            }
+        }
+
+        mPartial = new double[K][mY + 1];
+        mU = new double[mX + 1][mY + 1];
+        mV = new double[mX + 1][mY + 1];
+    }
+
+    private void fitGrid() {
+        if (mSolver.mX != mX || mSolver.mY != mY) {
+            this.buildTables();
+        }
+    }
+
+    public void computeVorticity(double[][] out) {
+        fitGrid();
+        fillWeights(WEIGHT_VORTICITY);
+        expand(mSinX, mSinY, out);
+    }
+
+    public void computeStreamFunction(double[][] out) {
+        fitGrid();
+        fillWeights(WEIGHT_STREAM);
+        expand(mSinX, mSinY, out);
+    }
+
+    public void computeSpeed(double[][] out) {
+        // Both velocity components at the same (unstaggered) nodes
+        fitGrid();
+        fillWeights(WEIGHT_U);
+        expand(mSinX, mCosY, mU);
+        fillWeights(WEIGHT_V);
+        expand(mCosX, mSinY, mV);
+
+        for (int i = 0; i < mX + 1; i++) {
+            for (int j = 0; j < mY + 1; j++) {
+                out[i][j] = Math.sqrt(mU[i][j] * mU[i][j] + mV[i][j] * mV[i][j]);
+            }
+        }
+    }
+
+    private void fillWeights(int quantity) {
+        EigenFluidSolver s = mSolver;
+
+        for (double[] row : mWeights) {
+            Arrays.fill(row, 0.0);
+        }
+
+        for (int k = 0; k < s.mN; k++) {
+            int a = s.basisLookup(k, 0);
+            int b = s.basisLookup(k, 1);
+            double c = s.mCoefficients[k];
+
+            switch (quantity) {
+                case WEIGHT_VORTICITY:
+                    mWeights[a][b] = c;
+                    break;
+                case WEIGHT_STREAM:
+                    mWeights[a][b] = c * s.mInverseEigenvalues[k];
+                    break;
+                case WEIGHT_U:
+                    mWeights[a][b] = c * b * s.mInverseEigenvalues[k];
+                    break;
+                case WEIGHT_V:
+                    mWeights[a][b] = -c * a * s.mInverseEigenvalues[k];
+                    break;
+            }
+        }
+    }
+
+    private void expand(double[][] tx, double[][] ty, double[][] out) {
+        // out[i][j] = sum_a tx[a][i] * sum_b W[a][b] * ty[b][j]
+        int K = mWeights.length;
+
+        for (int a = 1; a < K; a++) {
+            double[] partial = mPartial[a];
+            Arrays.fill(partial, 0.0);
+            for (int b = 1; b < K; b++) {
+                double w = mWeights[a][b];
+                double[] row = ty[b];
+                for (int j = 0; j < mY + 1; j++) {
+                    partial[j] += w * row[j];
+                }
+            }
+        }
+
+        for (int i = 0; i < mX + 1; i++) {
+            double[] o = out[i];
+            Arrays.fill(o, 0.0);
+            for (int a = 1; a < K; a++) {
+                double x = tx[a][i];
+                double[] partial = mPartial[a];
+                for (int j = 0; j < mY + 1; j++) {
+                    o[j] += x * partial[j];
+                }
+            }
+        }
+    }
+
+    private static final int WEIGHT_VORTICITY = 0;
+    private static final int WEIGHT_STREAM = 1;
+    private static final int WEIGHT_U = 2;
+    private static final int WEIGHT_V = 3;
+
+    public final EigenFluidSolver mSolver;
+
+    private final double[][] mWeights;
+    private int mX;
+    private int mY;
+    private double[][] mSinX;
+    private double[][] mCosX;
+    private double[][] mSinY;
+    private double[][] mCosY;
+    private double[][] mPartial;
+    private double[][] mU;
+    private double[][] mV;
+}
@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TouchInputQueue {
+
+    // Single-producer/single-consumer ring of touch samples. The UI thread offers samples and the
+    // simulation thread polls them; neither side locks or allocates. Each slot holds x, y and a
+    // flag marking the first sample of a stroke.
+
+    public TouchInputQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+        mMask = size - 1;
+        mSamples = new float[size * 3];
+    }
+
+    public boolean offer(float x, float y, boolean strokeStart) {
+        // Producer side. Drops the sample if the consumer has fallen a full ring behind.
+        long tail = mTail.get();
+        if (tail - mHead.get() > mMask) {
+            return false;
+        }
+
+        int slot = (int) (tail & mMask) * 3;
+        mSamples[slot] = x;
+        mSamples[slot + 1] = y;
+        mSamples[slot + 2] = strokeStart ? 1.0f : 0.0f;
+
+        mTail.lazySet(tail + 1);
+        return true;
+    }
+
+    public boolean poll(float[] sample) {
+        // Consumer side. Copies the oldest sample into sample[0..2].
+        long head = mHead.get();
+        if (head == mTail.get()) {
+            return false;
+        }
+
+        int slot = (int) (head & mMask) * 3;
+        sample[0] = mSamples[slot];
+        sample[1] = mSamples[slot + 1];
+        sample[2] = mSamples[slot + 2];
+
+        mHead.lazySet(head + 1);
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return mHead.get() == mTail.get();
+    }
+
+    private final int mMask;
+    private final float[] mSamples;
+    private final AtomicLong mHead = new AtomicLong();
+    private final AtomicLong mTail = new AtomicLong();
+}
@@ -0,0 +1,158 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class WorkerPool {
+
+    // Persistent worker threads for data-parallel solver stages. run() hands out chunk indices
+    // through one atomic counter tagged with a generation number, so workers that wake late can
+    // never claim chunks of a later run. Nothing is allocated per run. Idle workers and the
+    // waiting caller spin briefly before parking, so back-to-back runs (such as the four RK4
+    // stages of a step) hand over without a park/unpark round trip.
+
+    public interface Task {
+        // worker is in [0, getWorkerCount()), 0 being the calling thread
+        void run(int chunk, int worker);
+    }
+
+    public WorkerPool(int threads) {
+        mThreads = new Thread[Math.max(threads, 0)];
+
+        for (int t = 0; t < mThreads.length; t++) {
+            final int worker = t + 1;
+            mThreads[t] = new Thread(() -> loop(worker), "EigenFluidWorker-" + worker);
+            mThreads[t].setDaemon(true);
+            mThreads[t].start();
+        }
+    }
+
+    public static WorkerPool forAvailableProcessors() {
+        return new WorkerPool(Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    public int getWorkerCount() {
+        return mThreads.length + 1;
+    }
+
+    public void run(Task task, int chunks) {
+        // Runs task for every chunk in [0, chunks) and returns once all have finished.
+        // Not reentrant: only one thread may call run() at a time.
+        if (mThreads.length == 0 || chunks <= 1) {
+            for (int c = 0; c < chunks; c++) {
+                task.run(c, 0);
+            }
+            return;
+        }
+
+        mTask = task;
+        mChunks = chunks;
+        mDone.set(0);
+        mCaller = Thread.currentThread();
+
+        int generation = ++mGeneration;
+        mState.set(((long) generation) << 32);
+
+        for (Thread thread : mThreads) {
+            LockSupport.unpark(thread);
+        }
+
+        work(generation, 0);
+
+        int spins = 0;
+        while (mDone.get() < chunks) {
+            if (spins < SPIN_LIMIT) {
+                spins++;
+            } else {
+                LockSupport.park(this);
+            }
+        }
+
+        mTask = null;
+    }
+
+    public void shutdown() {
+        mShutdown = true;
+        for (Thread thread : mThreads) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void loop(int worker) {
+        int seen = 0;
+        int spins = 0;
+
+        while (!mShutdown) {
+            int generation = (int) (mState.get() >>> 32);
+            if (generation == seen) {
+                if (spins < SPIN_LIMIT) {
+                    spins++;
+                } else {
+                    LockSupport.park(this);
+                }
+                continue;
+            }
+
+            seen = generation;
+            spins = 0;
+            work(generation, worker);
+        }
+    }
+
+    private void work(int generation, int worker) {
+        while (true) {
+            long state = mState.get();
+            int chunk = (int) state;
+            int chunks = mChunks;
+
+            if ((int) (state >>> 32) != generation || chunk >= chunks) {
+                return;
+            }
+
+            if (mState.compareAndSet(state, state + 1)) {
+                mTask.run(chunk, worker);
+
+                if (mDone.incrementAndGet() == chunks) {
+                    LockSupport.unpark(mCaller);
+                }
+            }
+        }
+    }
+
+    // Volatile reads before a spinning thread parks; a few tens of microseconds
+    private static final int SPIN_LIMIT = 2000;
+
+    private final Thread[] mThreads;
+    private final AtomicLong mState = new AtomicLong();
+    private final AtomicInteger mDone = new AtomicInteger();
+    private volatile Task mTask;
+    private volatile int mChunks;
+    private volatile Thread mCaller;
+    private volatile boolean mShutdown;
+    private int mGeneration;
+}
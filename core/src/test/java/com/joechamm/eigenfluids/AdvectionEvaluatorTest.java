@@ -0,0 +1,241 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class AdvectionEvaluatorTest {
+
+    // Every advection evaluator must agree with the SparseMatrix reference, q . (C_k q) by
+    // mult() and dot(), on random coefficients. Differences are summation order only, which
+    // stays around 1e-13 at N = 256.
+
+    private static final int N = 256;
+    private static final double TOLERANCE = 1e-12;
+    private static final int SAMPLES = 4;
+
+    @BeforeClass
+    public static void setUp() {
+        sBasis = new BasisBundle(4, N);
+        sCk = sBasis.buildStructureCoefficients();
+        sPool = new WorkerPool(3);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        sPool.shutdown();
+    }
+
+    @Test
+    public void packedMatchesSparseMatrix() {
+        PackedStructureCoefficients packed = sBasis.mPackedCk;
+        assertNotNull(packed);
+
+        Random random = new Random(1);
+        double[] scaled = new double[N];
+        double[] result = new double[N];
+
+        for (int s = 0; s < SAMPLES; s++) {
+            double[] q = randomCoefficients(random);
+            packed.scale(q, scaled);
+            for (int k = 0; k < N; k++) {
+                result[k] = packed.quadraticForm(k, q, scaled);
+            }
+            assertAgrees(reference(q), result);
+        }
+    }
+
+    @Test
+    public void matrixFreeMatchesSparseMatrix() {
+        Random random = new Random(2);
+        double[] result = new double[N];
+
+        for (int s = 0; s < SAMPLES; s++) {
+            double[] q = randomCoefficients(random);
+            sBasis.mMatrixFree.evaluate(q, result);
+            assertAgrees(reference(q), result);
+        }
+    }
+
+    @Test
+    public void parallelMatchesSparseMatrix() {
+        ParallelAdvection parallel = new ParallelAdvection(sBasis.mPackedCk, sBasis.mMatrixFree, sPool);
+        parallel.partition(allModes(), N);
+
+        Random random = new Random(3);
+        double[] result = new double[N];
+
+        for (int s = 0; s < SAMPLES; s++) {
+            double[] q = randomCoefficients(random);
+            double[] expected = reference(q);
+
+            parallel.evaluate(q, result, false);
+            assertAgrees(expected, result);
+
+            parallel.evaluate(q, result, true);
+            assertAgrees(expected, result);
+        }
+    }
+
+    @Test
+    public void ensembleMatchesSparseMatrix() {
+        // One step of every member against a single explicit RK4 step built on the reference
+        int members = 3;
+        double dt = 0.01;
+        EnsembleSolver ensemble = new EnsembleSolver(sBasis, dt, members);
+
+        Random random = new Random(4);
+        double[][] q = new double[members][];
+        for (int m = 0; m < members; m++) {
+            q[m] = randomCoefficients(random);
+            ensemble.setCoefficients(m, q[m]);
+        }
+
+        ensemble.step();
+
+        double[] actual = new double[N];
+        for (int m = 0; m < members; m++) {
+            ensemble.getCoefficients(m, actual);
+            assertAgrees(referenceStep(q[m], dt), actual);
+        }
+    }
+
+    @Test
+    public void solverPathsAgree() {
+        // Step identical solvers through the stored, matrix-free and parallel evaluators
+        EigenFluidSolver stored = seededSolver();
+        EigenFluidSolver matrixFree = seededSolver();
+        EigenFluidSolver parallel = seededSolver();
+        matrixFree.setMatrixFreeAdvection(true);
+        parallel.mWorkerPool = sPool;
+        parallel.setParallelAdvection(true);
+
+        try {
+            for (int s = 0; s < 20; s++) {
+                stored.step();
+                matrixFree.step();
+                parallel.step();
+            }
+
+            assertAgrees(stored.mCoefficients, matrixFree.mCoefficients);
+            assertAgrees(stored.mCoefficients, parallel.mCoefficients);
+        } finally {
+            stored.release();
+            matrixFree.release();
+            parallel.release();
+        }
+    }
+
+    private static double[] reference(double[] q) {
+        double[] result = new double[N];
+        for (int k = 0; k < N; k++) {
+            double[] cq = sCk[k].mult(q);
+            double sum = 0.0;
+            for (int i = 0; i < N; i++) {
+                sum += q[i] * cq[i];
+            }
+            result[k] = sum;
+        }
+        return result;
+    }
+
+    private static double[] referenceStep(double[] q0, double dt) {
+        // EnsembleSolver.step() with zero viscosity: RK4, then energy renormalization
+        double[][] dwt = new double[4][];
+        double[] qn = q0;
+        double[] weights = {0.5, 0.5, 1.0};
+
+        for (int stage = 0; stage < 4; stage++) {
+            dwt[stage] = reference(qn);
+            if (stage < 3) {
+                qn = new double[N];
+                for (int k = 0; k < N; k++) {
+                    qn[k] = q0[k] + weights[stage] * dwt[stage][k] * dt;
+                }
+            }
+        }
+
+        double[] q = new double[N];
+        for (int k = 0; k < N; k++) {
+            q[k] = q0[k] + (dwt[0][k] + 2.0 * dwt[1][k] + 2.0 * dwt[2][k] + dwt[3][k]) / 6.0 * dt;
+        }
+
+        double factor = Math.sqrt(energy(q0)) / Math.sqrt(energy(q));
+        for (int k = 0; k < N; k++) {
+            q[k] *= factor;
+        }
+        return q;
+    }
+
+    private static double energy(double[] q) {
+        double sum = 0.0;
+        for (int k = 0; k < N; k++) {
+            sum += sBasis.mInverseEigenvalues[k] * q[k] * q[k];
+        }
+        return sum;
+    }
+
+    private static EigenFluidSolver seededSolver() {
+        EigenFluidSolver solver = new EigenFluidSolver(4, N, 0, 1L);
+        Random random = new Random(5);
+        for (int k = 0; k < N; k++) {
+            solver.mCoefficients[k] = random.nextGaussian();
+        }
+        return solver;
+    }
+
+    private static double[] randomCoefficients(Random random) {
+        double[] q = new double[N];
+        for (int k = 0; k < N; k++) {
+            q[k] = random.nextGaussian();
+        }
+        return q;
+    }
+
+    private static int[] allModes() {
+        int[] modes = new int[N];
+        for (int k = 0; k < N; k++) {
+            modes[k] = k;
+        }
+        return modes;
+    }
+
+    private static void assertAgrees(double[] expected, double[] actual) {
+        for (int k = 0; k < expected.length; k++) {
+            assertEquals("mode " + k, expected[k], actual[k], TOLERANCE);
+        }
+    }
+
+    private static BasisBundle sBasis;
+    private static SparseMatrix[] sCk;
+    private static WorkerPool sPool;
+}
@@ -0,0 +1,59 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class BoxBasisTest {
+
+    @Test
+    public void advectionConservesEnergy() {
+        // sum_k c_k dc_k/dt vanishes for the Euler nonlinearity
+        BoxBasis basis = new BoxBasis(8, 4);
+        Random random = new Random(1);
+        double[] q = new double[basis.mN];
+        for (int k = 0; k < basis.mN; k++) {
+            q[k] = random.nextGaussian();
+        }
+
+        double power = 0.0;
+        double scale = 0.0;
+        for (int k = 0; k < basis.mN; k++) {
+            double dq = basis.advectionTerm(k, q);
+            power += q[k] * dq;
+            scale += Math.abs(q[k] * dq);
+        }
+        assertEquals(0.0, power, 1e-12 * scale);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsModeIndicesPastSixteenBits() {
+        new BoxBasis(8, BoxBasis.MAX_WAVENUMBER + 1);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CoefficientRecorderTest {
+
+    // Records a developed, stirred flow and replays it. Full-width frames must come back exactly;
+    // quantized ones within a small fraction of the coefficient range, with no drift.
+
+    private static final int STEPS = 600;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void doublesReplayExactly() throws IOException {
+        assertEquals(0.0, replayError(0), 0.0);
+    }
+
+    @Test
+    public void floatsReplayWithinFloatPrecision() throws IOException {
+        assertTrue(replayError(CoefficientRecorder.FLAG_FLOAT) < 1e-6);
+    }
+
+    @Test
+    public void deltasReplayWithoutClipping() throws IOException {
+        assertTrue(replayError(CoefficientRecorder.FLAG_DELTA) < 1e-4);
+        assertTrue(replayError(CoefficientRecorder.FLAG_DELTA | CoefficientRecorder.FLAG_FLOAT) < 1e-4);
+    }
+
+    @Test
+    public void deltasAreSmallerThanKeyframes() {
+        int N = 64;
+        assertTrue(CoefficientRecorder.frameOffset(N, CoefficientRecorder.FLAG_DELTA, CoefficientRecorder.KEYFRAME_INTERVAL, STEPS)
+                < CoefficientRecorder.frameOffset(N, 0, CoefficientRecorder.KEYFRAME_INTERVAL, STEPS) / 3);
+    }
+
+    @Test
+    public void seekPastTheEndIsRejected() throws IOException {
+        File file = mFolder.newFile();
+        EigenFluidSolver solver = new EigenFluidSolver(8, 16, 0, 1L);
+        solver.startRecording(file, 10, CoefficientRecorder.FLAG_DELTA);
+        for (int s = 0; s < 10; s++) {
+            solver.step();
+        }
+        solver.stopRecording();
+        solver.release();
+
+        CoefficientPlayer player = new CoefficientPlayer(file);
+        player.seek(10);
+        assertFalse(player.next(new double[16]));
+
+        try {
+            player.seek(11);
+            throw new AssertionError("seek(11) should fail");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    private double replayError(int flags) throws IOException {
+        // Largest coefficient error over the whole replay, relative to the largest coefficient
+        File file = mFolder.newFile();
+        EigenFluidSolver solver = new EigenFluidSolver(32, 64, 0, 1L);
+        Random random = new Random(1);
+        for (int k = 0; k < solver.mN; k++) {
+            solver.mCoefficients[k] = 0.3 * random.nextGaussian();
+        }
+
+        double[][] recorded = new double[STEPS][];
+        solver.startRecording(file, STEPS, flags);
+        for (int s = 0; s < STEPS; s++) {
+            if (s % 20 == 0) {
+                solver.stir(randomPath(random));
+            }
+            solver.step();
+            recorded[s] = solver.mCoefficients.clone();
+        }
+        solver.stopRecording();
+        solver.release();
+
+        CoefficientPlayer player = new CoefficientPlayer(file);
+        assertEquals(STEPS, player.mFrameCount);
+
+        double[] replayed = new double[player.mN];
+        double error = 0.0;
+        double peak = 0.0;
+        for (int s = 0; s < STEPS; s++) {
+            assertTrue(player.next(replayed));
+            for (int k = 0; k < player.mN; k++) {
+                error = Math.max(error, Math.abs(replayed[k] - recorded[s][k]));
+                peak = Math.max(peak, Math.abs(recorded[s][k]));
+            }
+        }
+        assertFalse(player.next(replayed));
+
+        return error / peak;
+    }
+
+    private static double[][] randomPath(Random random) {
+        // A short straight drag with a strong force, as a touch would produce
+        double x = 0.2 + 0.6 * random.nextDouble();
+        double y = 0.2 + 0.6 * random.nextDouble();
+        double fx = 20.0 * random.nextGaussian();
+        double fy = 20.0 * random.nextGaussian();
+
+        double[][] path = new double[8][];
+        for (int p = 0; p < path.length; p++) {
+            path[p] = new double[] {x + 0.01 * p * fx / 20.0, y + 0.01 * p * fy / 20.0, fx, fy};
+        }
+        return path;
+    }
+}
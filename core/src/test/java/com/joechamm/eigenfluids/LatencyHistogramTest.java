@@ -0,0 +1,85 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsRoundTripWithinResolution() {
+        // Exact below 64, then within one sub-bucket (1 / 32 of the power of two)
+        for (long v = 0; v < 64; v++) {
+            assertEquals(v, LatencyHistogram.valueOf(LatencyHistogram.indexOf(v)));
+        }
+
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            long v = 64 + (random.nextLong() >>> (1 + random.nextInt(62)));
+            int index = LatencyHistogram.indexOf(v);
+            assertTrue(index < LatencyHistogram.BUCKET_COUNT);
+            assertTrue(Math.abs(LatencyHistogram.valueOf(index) - v) <= v / 32.0);
+        }
+
+        assertTrue(LatencyHistogram.indexOf(Long.MAX_VALUE) < LatencyHistogram.BUCKET_COUNT);
+    }
+
+    @Test
+    public void percentilesMatchSortedSamples() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(2);
+
+        long[] samples = new long[10000];
+        long sum = 0;
+        for (int i = 0; i < samples.length; i++) {
+            // Frame-time-like values around 16 ms with a long tail
+            samples[i] = (long) (16e6 * Math.exp(0.3 * random.nextGaussian()));
+            histogram.record(samples[i]);
+            sum += samples[i];
+        }
+        Arrays.sort(samples);
+
+        assertEquals(samples.length, histogram.getCount());
+        assertEquals(samples[samples.length - 1], histogram.getMax());
+        assertEquals((double) sum / samples.length, histogram.getMean(), 1e-6);
+
+        for (double percentile : new double[] {50.0, 90.0, 99.0, 99.9}) {
+            long expected = samples[(int) Math.ceil(percentile / 100.0 * samples.length) - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+            assertEquals("p" + percentile, expected, actual, expected / 32.0);
+        }
+        assertEquals(histogram.getMax(), histogram.getValueAtPercentile(100.0));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50.0));
+    }
+}
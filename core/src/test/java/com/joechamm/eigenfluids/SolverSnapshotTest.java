@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SolverSnapshotTest {
+
+    @Test
+    public void restoredSolverStepsBitExactly() {
+        // Capture a solver away from every default, restore it and step both side by side
+        EigenFluidSolver original = new EigenFluidSolver(32, 64, 1000, 7L);
+        Random random = new Random(1);
+        for (int k = 0; k < original.mN; k++) {
+            original.mCoefficients[k] = 0.3 * random.nextGaussian();
+        }
+        original.mViscosity = 0.001;
+        original.setCubicAdvection(true);
+        original.setActiveModes(40);
+        original.setActiveParticles(600);
+        original.setMatrixFreeAdvection(true);
+
+        for (int s = 0; s < 20; s++) {
+            original.step();
+            original.advectParticles();
+        }
+        original.stir(new double[][] {{0.3, 0.3, 2.0, 1.0}, {0.35, 0.32, 2.0, 1.0}, {0.4, 0.34, 2.0, 1.0}});
+
+        EigenFluidSolver restored = SolverSnapshot.create(SolverSnapshot.capture(original));
+
+        try {
+            assertEquals(original.getActiveModes(), restored.getActiveModes());
+            assertEquals(original.getActiveParticles(), restored.getActiveParticles());
+            assertEquals(original.mMatrixFreeAdvection, restored.mMatrixFreeAdvection);
+
+            for (int s = 0; s < 50; s++) {
+                original.step();
+                original.advectParticles();
+                restored.step();
+                restored.advectParticles();
+            }
+
+            assertArrayEquals(original.mCoefficients, restored.mCoefficients, 0.0);
+            assertArrayEquals(original.mParticlesXY, restored.mParticlesXY, 0.0f);
+        } finally {
+            original.release();
+            restored.release();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void restoreRejectsAnotherConfiguration() {
+        EigenFluidSolver small = new EigenFluidSolver(8, 16, 100, 1L);
+        EigenFluidSolver large = new EigenFluidSolver(8, 64, 100, 1L);
+
+        try {
+            SolverSnapshot.restore(large, SolverSnapshot.capture(small));
+        } finally {
+            small.release();
+            large.release();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class SpectralDiagnosticsTest {
+
+    @Test
+    public void followsGridResolutionChanges() {
+        EigenFluidSolver solver = new EigenFluidSolver(32, 64, 0, 1L);
+        Random random = new Random(1);
+        for (int k = 0; k < solver.mN; k++) {
+            solver.mCoefficients[k] = random.nextGaussian();
+        }
+
+        SpectralDiagnostics diagnostics = new SpectralDiagnostics(solver);
+        diagnostics.computeVorticity(new double[solver.mX + 1][solver.mY + 1]);
+
+        try {
+            solver.setGridResolution(16);
+
+            double[][] actual = new double[solver.mX + 1][solver.mY + 1];
+            double[][] expected = new double[solver.mX + 1][solver.mY + 1];
+            diagnostics.computeVorticity(actual);
+            new SpectralDiagnostics(solver).computeVorticity(expected);
+
+            for (int i = 0; i < expected.length; i++) {
+                assertArrayEquals(expected[i], actual[i], 0.0);
+            }
+        } finally {
+            solver.release();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Joseph Cunningham
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.joechamm.eigenfluids;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TouchInputQueueTest {
+
+    @Test
+    public void samplesComeOutInOrder() {
+        TouchInputQueue queue = new TouchInputQueue(4);
+        float[] sample = new float[3];
+
+        assertTrue(queue.isEmpty());
+        assertFalse(queue.poll(sample));
+
+        // Wrap around the ring a few times
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(queue.offer(round, i, i == 0));
+            }
+            for (int i = 0; i < 3; i++) {
+                assertTrue(queue.poll(sample));
+                assertEquals(round, sample[0], 0.0f);
+                assertEquals(i, sample[1], 0.0f);
+                assertEquals(i == 0 ? 1.0f : 0.0f, sample[2], 0.0f);
+            }
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void fullQueueDropsNewSamples() {
+        // Capacity rounds up to a power of two
+        TouchInputQueue queue = new TouchInputQueue(3);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i, 0.0f, false));
+        }
+        assertFalse(queue.offer(4.0f, 0.0f, false));
+
+        float[] sample = new float[3];
+        assertTrue(queue.poll(sample));
+        assertEquals(0.0f, sample[0], 0.0f);
+        assertTrue(queue.offer(4.0f, 0.0f, false));
+    }
+
+    @Test
+    public void consumerSeesEverySampleAcrossThreads() throws InterruptedException {
+        final int count = 100000;
+        final TouchInputQueue queue = new TouchInputQueue(64);
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                while (!queue.offer(i, -i, false)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        float[] sample = new float[3];
+        for (int i = 0; i < count; i++) {
+            while (!queue.poll(sample)) {
+                Thread.yield();
+            }
+            assertEquals(i, sample[0], 0.0f);
+            assertEquals(-i, sample[1], 0.0f);
+        }
+
+        producer.join();
+        assertTrue(queue.isEmpty());
+    }
+}